@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.bench;
+
+import com.github.escortkeel.kchess.Piece;
+import com.github.escortkeel.kchess.Team;
+import com.github.escortkeel.kchess.Tile;
+import com.github.escortkeel.kchess.board.Fen;
+import com.github.escortkeel.kchess.board.Position;
+
+/**
+ * Positions shared by the benchmarks.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+final class Boards {
+
+    static final String MIDDLEGAME = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+    static final String ENDGAME = "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1";
+
+    private Boards() {
+    }
+
+    static Position position(String fen) {
+        Position position = new Position();
+        Fen.load(position, fen);
+        return position;
+    }
+
+    /**
+     * Builds the {@code Tile[][]} the GUI uses for the given FEN, with every
+     * piece marked unmoved.
+     */
+    static Tile[][] tiles(String fen) {
+        Position position = position(fen);
+
+        Tile[][] tiles = new Tile[8][8];
+        for (int r = 0; r < 8; r++) {
+            for (int c = 0; c < 8; c++) {
+                tiles[r][c] = new Tile();
+
+                int piece = position.pieceAt(Position.square(c, 7 - r));
+                if (piece != Position.EMPTY) {
+                    tiles[r][c].setTeam(Position.colourOf(piece) == Position.WHITE ? Team.WHITE : Team.BLACK);
+                    tiles[r][c].setPiece(Piece.values()[Position.typeOf(piece)]);
+                }
+            }
+        }
+        return tiles;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.bench;
+
+import com.github.escortkeel.kchess.BoardPanel;
+import com.github.escortkeel.kchess.GameManager;
+import java.awt.Graphics2D;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link BoardPanel#paint} of the starting position into an
+ * offscreen image, optionally with the e2 pawn selected so that its targets
+ * are highlighted. The panel keeps the board in a back buffer and redraws
+ * only squares which have changed, so each benchmark changes the board by a
+ * different amount before painting:
+ * <ul>
+ * <li>{@link #copy} changes nothing, so only the back buffer is copied;</li>
+ * <li>{@link #select} clicks the e2 pawn, redrawing it and its two targets
+ * as a click in play would;</li>
+ * <li>{@link #redraw} resizes the panel by a pixel, which replaces the back
+ * buffer and redraws all 64 squares as a resized window would.</li>
+ * </ul>
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+
+    @Param({"false", "true"})
+    public boolean selected;
+    private BoardPanel panel;
+    private MouseEvent clickE2;
+    private BufferedImage image;
+    private Graphics2D graphics;
+    private int size = 600;
+
+    @Setup
+    public void setup() throws IOException {
+        panel = new BoardPanel(new GameManager());
+        panel.setSize(size, size);
+        clickE2 = new MouseEvent(panel, MouseEvent.MOUSE_CLICKED, 0, 0, 4 * 75 + 37, 6 * 75 + 37, 1, false);
+
+        if (selected) {
+            panel.dispatchEvent(clickE2);
+        }
+
+        image = new BufferedImage(600, 600, BufferedImage.TYPE_INT_RGB);
+        graphics = image.createGraphics();
+        panel.paint(graphics);
+    }
+
+    @TearDown
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage copy() {
+        panel.paint(graphics);
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage select() {
+        panel.dispatchEvent(clickE2);
+        panel.paint(graphics);
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage redraw() {
+        size = size == 600 ? 599 : 600;
+        panel.setSize(size, size);
+        panel.paint(graphics);
+        return image;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.bench;
+
+import com.github.escortkeel.kchess.GameManager;
+import com.github.escortkeel.kchess.Piece;
+import com.github.escortkeel.kchess.Team;
+import com.github.escortkeel.kchess.Tile;
+import com.github.escortkeel.kchess.board.GameResult;
+import com.github.escortkeel.kchess.board.Position;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@code Tile[][]} rule checks the GUI calls: {@code canMove}
+ * against every target square for each white piece of one type, and game
+ * adjudication with {@code Position.gameResult}.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RulesBenchmark {
+
+    @Param({"PAWN", "KNIGHT", "BISHOP", "ROOK", "QUEEN", "KING"})
+    public Piece piece;
+    private GameManager manager;
+    private Tile[][] tiles;
+    private Position position;
+    private int[] rows, columns;
+
+    @Setup
+    public void setup() throws IOException {
+        manager = new GameManager();
+        tiles = Boards.tiles(Boards.MIDDLEGAME);
+        position = Boards.position(Boards.MIDDLEGAME);
+
+        int count = 0;
+        int[] r = new int[64], c = new int[64];
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++) {
+                if (tiles[i][j].getTeam() == Team.WHITE && tiles[i][j].getPiece() == piece) {
+                    r[count] = i;
+                    c[count++] = j;
+                }
+            }
+        }
+
+        rows = new int[count];
+        columns = new int[count];
+        System.arraycopy(r, 0, rows, 0, count);
+        System.arraycopy(c, 0, columns, 0, count);
+    }
+
+    @Benchmark
+    public int canMove() {
+        int legal = 0;
+        for (int i = 0; i < rows.length; i++) {
+            for (int r = 0; r < 8; r++) {
+                for (int c = 0; c < 8; c++) {
+                    if (manager.canMove(tiles, rows[i], columns[i], r, c)) {
+                        legal++;
+                    }
+                }
+            }
+        }
+        return legal;
+    }
+
+    @Benchmark
+    public GameResult gameResult() {
+        return position.gameResult();
+    }
+}
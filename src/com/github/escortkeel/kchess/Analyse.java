@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess;
+
+import com.github.escortkeel.kchess.board.Fen;
+import com.github.escortkeel.kchess.board.Position;
+import com.github.escortkeel.kchess.engine.Engine;
+import com.github.escortkeel.kchess.engine.Search;
+import com.github.escortkeel.kchess.engine.SearchResult;
+import com.github.escortkeel.kchess.engine.TimeManager;
+
+/**
+ * Searches a single position headless and prints the result.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public class Analyse {
+
+    private static void usage() {
+        System.err.println("usage: analyse [--millis n] [--nodes n] [--depth n] [--threads n] [--hash mb] [fen]");
+        System.exit(2);
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String args[]) {
+        long millis = 5000, nodes = TimeManager.UNLIMITED;
+        int depth = Search.MAX_PLY, threads = Engine.availableThreads(), hash = 64;
+        String fen = Fen.START;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--millis")) {
+                    millis = Long.parseLong(args[++i]);
+                } else if (args[i].equals("--nodes")) {
+                    nodes = Long.parseLong(args[++i]);
+                    millis = TimeManager.UNLIMITED;
+                } else if (args[i].equals("--depth")) {
+                    depth = Integer.parseInt(args[++i]);
+                    millis = TimeManager.UNLIMITED;
+                } else if (args[i].equals("--threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--hash")) {
+                    hash = Integer.parseInt(args[++i]);
+                } else {
+                    fen = args[i];
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            usage();
+        }
+
+        Position position = new Position();
+        Fen.load(position, fen);
+
+        Engine engine = new Engine(hash, threads);
+        SearchResult result = engine.search(position, new TimeManager(millis, nodes), depth);
+        engine.shutdown();
+
+        System.out.println(result);
+    }
+}
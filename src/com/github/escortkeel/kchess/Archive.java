@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess;
+
+import com.github.escortkeel.kchess.io.ArchiveReader;
+import com.github.escortkeel.kchess.io.ArchiveWriter;
+import com.github.escortkeel.kchess.io.Game;
+import com.github.escortkeel.kchess.io.PgnReader;
+import com.github.escortkeel.kchess.io.PgnWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts between PGN and the binary game archive, and replays archives.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public class Archive {
+
+    private static void usage() {
+        System.err.println("usage: archive create in.pgn out.kca");
+        System.err.println("       archive export in.kca out.pgn");
+        System.err.println("       archive game in.kca n");
+        System.err.println("       archive replay in.kca");
+        System.exit(2);
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String args[]) throws IOException {
+        if (args.length < 2) {
+            usage();
+        }
+
+        long start = System.currentTimeMillis();
+        if (args[0].equals("create") && args.length == 3) {
+            try (PgnReader pgn = new PgnReader(open(args[1], "r"));
+                    ArchiveWriter archive = new ArchiveWriter(open(args[2], "rw"))) {
+                while (pgn.hasNext()) {
+                    archive.write(pgn.next());
+                }
+                System.out.println(archive.count() + " games archived, " + pgn.errors() + " skipped");
+            }
+        } else if (args[0].equals("export") && args.length == 3) {
+            try (ArchiveReader archive = new ArchiveReader(open(args[1], "r"));
+                    PgnWriter pgn = new PgnWriter(new OutputStreamWriter(new FileOutputStream(args[2]), StandardCharsets.UTF_8))) {
+                for (Game game : archive) {
+                    pgn.write(game);
+                }
+                System.out.println(archive.count() + " games exported");
+            }
+        } else if (args[0].equals("game") && args.length == 3) {
+            try (ArchiveReader archive = new ArchiveReader(open(args[1], "r"))) {
+                int n = Integer.parseInt(args[2]);
+                if (n < 0 || n >= archive.count()) {
+                    System.err.println("archive: no game " + n + " (games are numbered from 0 to " + (archive.count() - 1) + ")");
+                    System.exit(1);
+                }
+                Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+                new PgnWriter(out).write(archive.game(n));
+            } catch (NumberFormatException e) {
+                usage();
+            }
+            return;
+        } else if (args[0].equals("replay") && args.length == 2) {
+            try (ArchiveReader archive = new ArchiveReader(open(args[1], "r"))) {
+                long plies = 0;
+                for (Game game : archive) {
+                    plies += game.length();
+                }
+
+                long millis = Math.max(1, System.currentTimeMillis() - start);
+                System.out.println(archive.count() + " games, " + plies + " plies replayed in " + millis + " ms ("
+                        + archive.count() * 1000L / millis + " games/s, " + plies * 1000 / millis + " plies/s)");
+            }
+            return;
+        } else {
+            usage();
+        }
+        System.out.println("in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private static FileChannel open(String file, String mode) throws IOException {
+        return new RandomAccessFile(new File(file), mode).getChannel();
+    }
+}
@@ -25,11 +25,28 @@
  */
 package com.github.escortkeel.kchess;
 
+import com.github.escortkeel.kchess.board.GameResult;
+import com.github.escortkeel.kchess.board.Move;
+import com.github.escortkeel.kchess.board.Fen;
+import com.github.escortkeel.kchess.board.Position;
+import com.github.escortkeel.kchess.engine.Engine;
+import com.github.escortkeel.kchess.engine.OpeningBook;
+import com.github.escortkeel.kchess.engine.Search;
+import com.github.escortkeel.kchess.engine.SearchResult;
+import com.github.escortkeel.kchess.engine.TimeManager;
+import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.image.BufferedImage;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingWorker;
 
 /**
  *
@@ -37,16 +54,39 @@ import javax.swing.JPanel;
  */
 public class BoardPanel extends JPanel {
 
-    private Team currentTeam;
-    private Tile[][] board = new Tile[8][8];
+    public static final int ENGINE_HASH_MB = 64;
+
+    private final Position position = new Position();
     private final GameFrame game;
-    private int selectedR, selectedC;
+    private final GameManager manager;
+    private int selected;
+    private long targets;
+    private BufferedImage buffer;
+    private int squareSize = GameManager.DEFAULT_SQUARE_SIZE;
+    private final int[] drawn = new int[64];
     private boolean gameEnded;
+    private Engine engine;
+    private int engineThreads = Engine.availableThreads();
+    private OpeningBook book;
+    private SwingWorker<SearchResult, Void> thinking;
 
     public BoardPanel(GameFrame game) {
+        this(game, game.getGameManager());
+    }
+
+    /**
+     * Creates a board which is not attached to a frame, for example to paint
+     * offscreen.
+     */
+    public BoardPanel(GameManager manager) {
+        this(null, manager);
+    }
+
+    private BoardPanel(GameFrame game, GameManager manager) {
         this.game = game;
-        this.selectedR = -1;
-        this.selectedC = -1;
+        this.manager = manager;
+
+        setPreferredSize(new Dimension(8 * GameManager.DEFAULT_SQUARE_SIZE, 8 * GameManager.DEFAULT_SQUARE_SIZE));
 
         reset();
 
@@ -55,60 +95,29 @@ public class BoardPanel extends JPanel {
         addMouseListener(new MouseListener() {
             @Override
             public void mouseClicked(MouseEvent e) {
-                if (gameEnded) {
+                if (gameEnded || thinking != null) {
                     return;
                 }
 
-                int newC = e.getX() / 75, newR = e.getY() / 75;
-
-                if (selectedR == -1 && board[newR][newC].getTeam() == currentTeam) {
-                    selectedC = newC;
-                    selectedR = newR;
-                } else if (selectedR != -1 && boardPanel.game.getGameManager().canMove(board, selectedR, selectedC, newR, newC, true)) {
-                    int castledTo = boardPanel.game.getGameManager().didCastle();
-                    if (castledTo != -1) {
-                        if (castledTo == 2) {
-                            board[currentTeam == Team.WHITE ? 7 : 0][0].setTeam(Team.NONE);
-
-                            board[currentTeam == Team.WHITE ? 7 : 0][3].setTeam(currentTeam);
-                            board[currentTeam == Team.WHITE ? 7 : 0][3].setPiece(Piece.ROOK);
-                            board[currentTeam == Team.WHITE ? 7 : 0][3].setMoved(true);
-                        } else if (castledTo == 6) {
-                            board[currentTeam == Team.WHITE ? 7 : 0][7].setTeam(Team.NONE);
-
-                            board[currentTeam == Team.WHITE ? 7 : 0][5].setTeam(currentTeam);
-                            board[currentTeam == Team.WHITE ? 7 : 0][5].setPiece(Piece.ROOK);
-                            board[currentTeam == Team.WHITE ? 7 : 0][5].setMoved(true);
-                        }
-                    }
-
-                    board[newR][newC].setTeam(board[selectedR][selectedC].getTeam());
-                    board[newR][newC].setPiece(board[selectedR][selectedC].getPiece());
-                    board[newR][newC].setMoved(true);
-
-                    board[selectedR][selectedC].setTeam(Team.NONE);
-
-                    selectedC = -1;
-                    selectedR = -1;
+                int newC = e.getX() / squareSize, newR = e.getY() / squareSize;
+                if (!boardPanel.manager.isInBounds(newR, newC)) {
+                    return;
+                }
 
-                    if (currentTeam == Team.WHITE) {
-                        currentTeam = Team.BLACK;
-                    } else {
-                        currentTeam = Team.WHITE;
+                int sq = GameManager.toSquare(newR, newC);
+                int piece = position.pieceAt(sq);
+                if (selected == -1 && piece != Position.EMPTY && Position.colourOf(piece) == position.sideToMove()) {
+                    select(sq);
+                } else if (selected != -1) {
+                    if ((targets & (1L << sq)) != 0) {
+                        play(boardPanel.manager.findMove(position, selected, sq));
+                        return;
+                    } else if (selected == sq) {
+                        select(-1);
                     }
-
-                    boardPanel.game.setTurn(currentTeam);
-                } else if (selectedC == newC && selectedR == newR) {
-                    selectedC = -1;
-                    selectedR = -1;
                 }
 
-                boardPanel.repaint();
-
-                if (boardPanel.game.getGameManager().isOver(board)) {
-                    JOptionPane.showMessageDialog(boardPanel, (currentTeam == Team.BLACK ? "White" : "Black") + " wins! Congratulations!", "Game over!", JOptionPane.WARNING_MESSAGE);
-                    gameEnded = true;
-                }
+                boardPanel.repaintStale();
             }
 
             @Override
@@ -129,71 +138,275 @@ public class BoardPanel extends JPanel {
         });
     }
 
+    /**
+     * Copies the offscreen board to {@code g}, first redrawing into it only
+     * the squares which have changed since they were last drawn. The board
+     * fills as much of the panel as it can, and the offscreen image is kept
+     * at the device resolution so that it stays sharp on HiDPI screens.
+     */
     @Override
     public void paint(Graphics g) {
-        for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                game.getGameManager().drawBackground(g, board, selectedR, selectedC, r, c);
+        squareSize = Math.max(1, Math.min(getWidth(), getHeight()) / 8);
+        double scale = g instanceof Graphics2D ? ((Graphics2D) g).getTransform().getScaleX() : 1;
+        int deviceSize = Math.max(1, (int) Math.round(squareSize * scale));
+
+        long stale;
+        if (buffer == null || buffer.getWidth() != 8 * deviceSize) {
+            int size = 8 * deviceSize;
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            buffer = gc != null ? gc.createCompatibleImage(size, size) : new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+            stale = -1L;
+        } else {
+            stale = stale();
+        }
+
+        if (stale != 0) {
+            Graphics bg = buffer.getGraphics();
+            try {
+                while (stale != 0) {
+                    int sq = Long.numberOfTrailingZeros(stale);
+                    int r = 7 - Position.rankOf(sq), c = Position.fileOf(sq);
+                    manager.drawBackground(bg, selected, targets, r, c, deviceSize);
+                    manager.drawForeground(bg, position, r, c, deviceSize);
+                    drawn[sq] = appearance(sq);
+                    stale &= stale - 1;
+                }
+            } finally {
+                bg.dispose();
             }
         }
 
-        for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                game.getGameManager().drawForeground(g, board[r][c], r, c);
+        int board = 8 * squareSize;
+        g.drawImage(buffer, 0, 0, board, board, null);
+
+        g.setColor(getBackground());
+        g.fillRect(board, 0, getWidth() - board, getHeight());
+        g.fillRect(0, board, board, getHeight() - board);
+    }
+
+    /**
+     * Encodes everything that determines how square {@code sq} is drawn: its
+     * piece and whether it is selected or highlighted.
+     */
+    private int appearance(int sq) {
+        int highlight = sq == selected ? 1 : (targets & (1L << sq)) != 0 ? 2 : 0;
+        return (position.pieceAt(sq) + 1) | (highlight << 4);
+    }
+
+    /**
+     * @return the squares whose offscreen image no longer matches the board
+     */
+    private long stale() {
+        long stale = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            if (drawn[sq] != appearance(sq)) {
+                stale |= 1L << sq;
             }
         }
+        return stale;
     }
 
-    public final void reset() {
-        this.gameEnded = false;
-        this.currentTeam = Team.WHITE;
+    /**
+     * Schedules a repaint clipped to each square which has changed since it
+     * was last drawn. The repaint manager coalesces the regions.
+     */
+    private void repaintStale() {
+        if (buffer == null) {
+            repaint();
+            return;
+        }
 
-        game.setTurn(Team.WHITE);
+        long stale = stale();
+        while (stale != 0) {
+            int sq = Long.numberOfTrailingZeros(stale);
+            repaint(Position.fileOf(sq) * squareSize, (7 - Position.rankOf(sq)) * squareSize, squareSize, squareSize);
+            stale &= stale - 1;
+        }
+    }
 
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                board[i][j] = new Tile();
+    private void play(int move) {
+        position.makeMove(move);
+        select(-1);
+
+        updateTurn();
+        repaintStale();
+
+        GameResult result = position.gameResult();
+        if (!result.isOver() && position.ply() >= Position.MAX_PLY - Search.MAX_PLY) {
+            JOptionPane.showMessageDialog(this, "The game is too long to continue. It is a draw.", "Game over!", JOptionPane.WARNING_MESSAGE);
+            gameEnded = true;
+        } else if (result.isOver()) {
+            if (result == GameResult.CHECKMATE) {
+                JOptionPane.showMessageDialog(this, (position.sideToMove() == Position.BLACK ? "White" : "Black") + " wins! Congratulations!", "Game over!", JOptionPane.WARNING_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(this, result + "! The game is a draw.", "Game over!", JOptionPane.WARNING_MESSAGE);
             }
+            gameEnded = true;
         }
+    }
 
-        for (int i = 0; i < 2; i++) {
-            for (int j = 0; j < 8; j++) {
-                board[i][j].setTeam(Team.BLACK);
-            }
+    /**
+     * Lets the engine choose and play a move for the side to move. The search
+     * runs for up to {@code millis} milliseconds off the event dispatch
+     * thread; the board ignores clicks until it has finished.
+     */
+    public void playEngineMove(final long millis) {
+        if (gameEnded || thinking != null) {
+            return;
         }
 
-        for (int i = 0; i < 8; i++) {
-            board[1][i].setPiece(Piece.PAWN);
+        if (engine == null) {
+            engine = new Engine(ENGINE_HASH_MB, engineThreads);
+            engine.setBook(book);
         }
 
-        for (int i = 0; i < 2; i++) {
-            for (int j = 0; j < 8; j++) {
-                board[6 + i][j].setTeam(Team.WHITE);
+        final Position root = new Position();
+        root.copyFrom(position);
+        select(-1);
+        repaintStale();
+
+        thinking = new SwingWorker<SearchResult, Void>() {
+            @Override
+            protected SearchResult doInBackground() {
+                return engine.search(root, TimeManager.millis(millis), Search.MAX_PLY);
+            }
+
+            @Override
+            protected void done() {
+                thinking = null;
+
+                try {
+                    SearchResult result = get();
+                    if (result.bestMove() != Move.NONE && position.ply() == root.ply() && position.hash() == root.hash()) {
+                        play(result.bestMove());
+                    }
+                } catch (InterruptedException | ExecutionException ex) {
+                    Logger.getLogger(BoardPanel.class.getName()).log(Level.SEVERE, null, ex);
+                }
             }
+        };
+        thinking.execute();
+    }
+
+    /**
+     * Selects the piece on {@code sq}, or clears the selection if it is -1,
+     * and caches its legal destinations for painting. Anything that changes
+     * the position must reselect.
+     */
+    private void select(int sq) {
+        selected = sq;
+        targets = sq == -1 ? 0 : manager.legalTargets(position, sq);
+    }
+
+    private void stopThinking() {
+        if (thinking != null) {
+            engine.stop();
+        }
+    }
+
+    /**
+     * @return the number of threads the engine searches with
+     */
+    public int getEngineThreads() {
+        return engineThreads;
+    }
+
+    /**
+     * Sets the number of threads the engine searches with. Ignored while the
+     * engine is thinking.
+     */
+    public void setEngineThreads(int threads) {
+        if (thinking != null) {
+            return;
         }
 
-        for (int i = 0; i < 8; i++) {
-            board[6][i].setPiece(Piece.PAWN);
+        engineThreads = threads;
+        if (engine != null) {
+            engine.setThreads(threads);
         }
+    }
+
+    /**
+     * @return the book the engine plays from, or {@code null}
+     */
+    public OpeningBook getBook() {
+        return book;
+    }
+
+    /**
+     * Sets the book the engine plays from while the game is in it, or
+     * {@code null} to always search.
+     */
+    public void setBook(OpeningBook book) {
+        this.book = book;
+        if (engine != null) {
+            engine.setBook(book);
+        }
+    }
+
+    private void updateTurn() {
+        if (game != null) {
+            game.setTurn(GameManager.toTeam(position.sideToMove()));
+        }
+    }
+
+    /**
+     * Takes back the last move played, if any.
+     */
+    public void undo() {
+        if (position.ply() == 0) {
+            return;
+        }
+
+        stopThinking();
+
+        position.unmakeMove();
+        gameEnded = false;
+        select(-1);
+
+        updateTurn();
+        repaintStale();
+    }
+
+    /**
+     * @return the FEN of the position on the board
+     */
+    public String getFen() {
+        return Fen.toString(position);
+    }
+
+    /**
+     * Sets up the board from {@code fen}, abandoning the game in progress.
+     *
+     * @throws IllegalArgumentException if {@code fen} is malformed or either
+     * side has no king, in which case the board is left unchanged
+     */
+    public void setFen(CharSequence fen) {
+        Position check = new Position();
+        Fen.load(check, fen);
+        if (check.kingSquare(Position.WHITE) == 64 || check.kingSquare(Position.BLACK) == 64) {
+            throw new IllegalArgumentException("Each side needs a king");
+        }
+
+        stopThinking();
+
+        position.copyFrom(check);
+        gameEnded = position.gameResult().isOver();
+        select(-1);
+
+        updateTurn();
+        repaintStale();
+    }
+
+    public final void reset() {
+        stopThinking();
+
+        this.gameEnded = false;
+
+        position.setStartPosition();
+        select(-1);
+        updateTurn();
 
-        board[0][0].setPiece(Piece.ROOK);
-        board[0][1].setPiece(Piece.KNIGHT);
-        board[0][2].setPiece(Piece.BISHOP);
-        board[0][3].setPiece(Piece.QUEEN);
-        board[0][4].setPiece(Piece.KING);
-        board[0][5].setPiece(Piece.BISHOP);
-        board[0][6].setPiece(Piece.KNIGHT);
-        board[0][7].setPiece(Piece.ROOK);
-
-        board[7][0].setPiece(Piece.ROOK);
-        board[7][1].setPiece(Piece.KNIGHT);
-        board[7][2].setPiece(Piece.BISHOP);
-        board[7][3].setPiece(Piece.QUEEN);
-        board[7][4].setPiece(Piece.KING);
-        board[7][5].setPiece(Piece.BISHOP);
-        board[7][6].setPiece(Piece.KNIGHT);
-        board[7][7].setPiece(Piece.ROOK);
-
-        repaint();
+        repaintStale();
     }
 }
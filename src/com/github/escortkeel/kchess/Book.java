@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess;
+
+import com.github.escortkeel.kchess.board.Fen;
+import com.github.escortkeel.kchess.board.MoveGenerator;
+import com.github.escortkeel.kchess.board.Position;
+import com.github.escortkeel.kchess.board.San;
+import com.github.escortkeel.kchess.engine.OpeningBook;
+import com.github.escortkeel.kchess.io.Game;
+import com.github.escortkeel.kchess.io.PgnReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds Polyglot opening books from PGN and looks positions up in them.
+ * Following Polyglot, a move scores two points for each game won by the
+ * side that played it and one for each draw.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public class Book {
+
+    public static final int DEFAULT_PLIES = 20;
+    private static final int LOOKUPS = 100000;
+
+    private static void usage() {
+        System.err.println("usage: book build [--plies n] [--min-games n] in.pgn out.bin");
+        System.err.println("       book probe book.bin [fen]");
+        System.exit(2);
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String args[]) throws IOException {
+        if (args.length < 2) {
+            usage();
+        }
+
+        if (args[0].equals("build")) {
+            int plies = DEFAULT_PLIES, minGames = 1;
+            List<String> files = new ArrayList<>();
+            try {
+                for (int i = 1; i < args.length; i++) {
+                    if (args[i].equals("--plies")) {
+                        plies = Integer.parseInt(args[++i]);
+                    } else if (args[i].equals("--min-games")) {
+                        minGames = Integer.parseInt(args[++i]);
+                    } else {
+                        files.add(args[i]);
+                    }
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                usage();
+            }
+            if (files.size() != 2 || plies < 1) {
+                usage();
+            }
+            build(files.get(0), files.get(1), plies, minGames);
+        } else if (args[0].equals("probe") && args.length <= 3) {
+            probe(args[1], args.length == 3 ? args[2] : Fen.START);
+        } else {
+            usage();
+        }
+    }
+
+    private static void build(String in, String out, int plies, int minGames) throws IOException {
+        long start = System.currentTimeMillis();
+
+        Map<Long, Map<Integer, long[]>> stats = new HashMap<>();
+        Position position = new Position();
+        int games = 0;
+        try (PgnReader pgn = new PgnReader(new RandomAccessFile(new File(in), "r").getChannel())) {
+            while (pgn.hasNext()) {
+                Game game = pgn.next();
+                int white;
+                if (game.result().equals(Game.WHITE_WINS)) {
+                    white = 2;
+                } else if (game.result().equals(Game.BLACK_WINS)) {
+                    white = 0;
+                } else if (game.result().equals(Game.DRAW)) {
+                    white = 1;
+                } else {
+                    continue;
+                }
+                games++;
+
+                game.start(position);
+                for (int ply = 0; ply < Math.min(plies, game.length()); ply++) {
+                    long key = OpeningBook.key(position);
+                    Map<Integer, long[]> moves = stats.get(key);
+                    if (moves == null) {
+                        moves = new HashMap<>();
+                        stats.put(key, moves);
+                    }
+
+                    int move = OpeningBook.encode(game.move(ply));
+                    long[] entry = moves.get(move);
+                    if (entry == null) {
+                        entry = new long[2];
+                        moves.put(move, entry);
+                    }
+                    entry[0] += position.sideToMove() == Position.WHITE ? white : 2 - white;
+                    entry[1]++;
+
+                    position.makeMove(game.move(ply));
+                }
+            }
+        }
+
+        List<long[]> entries = new ArrayList<>();
+        for (Map.Entry<Long, Map<Integer, long[]>> node : stats.entrySet()) {
+            long max = 0;
+            for (long[] entry : node.getValue().values()) {
+                max = Math.max(max, entry[0]);
+            }
+            for (Map.Entry<Integer, long[]> move : node.getValue().entrySet()) {
+                long[] entry = move.getValue();
+                if (entry[1] >= minGames) {
+                    long weight = max > 0xFFFF ? entry[0] * 0xFFFF / max : entry[0];
+                    entries.add(new long[]{node.getKey(), move.getKey(), weight});
+                }
+            }
+        }
+        Collections.sort(entries, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                long x = a[0] + Long.MIN_VALUE, y = b[0] + Long.MIN_VALUE;
+                if (x != y) {
+                    return x < y ? -1 : 1;
+                }
+                return a[2] != b[2] ? (a[2] > b[2] ? -1 : 1) : 0;
+            }
+        });
+
+        try (FileChannel channel = new RandomAccessFile(new File(out), "rw").getChannel()) {
+            channel.truncate(0);
+            ByteBuffer buffer = ByteBuffer.allocate(OpeningBook.ENTRY_SIZE * 4096);
+            for (long[] entry : entries) {
+                buffer.putLong(entry[0]).putShort((short) entry[1]).putShort((short) entry[2]).putInt(0);
+                if (!buffer.hasRemaining()) {
+                    write(channel, buffer);
+                }
+            }
+            write(channel, buffer);
+        }
+
+        System.out.println(entries.size() + " entries from " + games + " games in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void probe(String file, String fen) throws IOException {
+        Position position = new Position();
+        Fen.load(position, fen);
+
+        long opened = System.nanoTime();
+        try (OpeningBook book = OpeningBook.open(file)) {
+            opened = System.nanoTime() - opened;
+
+            int[] moves = new int[MoveGenerator.MAX_MOVES], weights = new int[MoveGenerator.MAX_MOVES];
+            int found = book.moves(position, moves, weights);
+
+            long total = 0;
+            for (int i = 0; i < found; i++) {
+                total += weights[i];
+            }
+            for (int i = 0; i < found; i++) {
+                System.out.printf("%-8s %6d %5.1f%%%n", San.toString(position, moves[i]), weights[i],
+                        total == 0 ? 100.0 / found : 100.0 * weights[i] / total);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                book.moves(position, moves, weights);
+            }
+            long lookup = (System.nanoTime() - start) / LOOKUPS;
+
+            System.out.println(found + " book moves; " + book.entries() + " entries, opened in "
+                    + opened / 1000 + " us, " + lookup + " ns per lookup");
+        }
+    }
+}
@@ -25,7 +25,12 @@
  */
 package com.github.escortkeel.kchess;
 
+import com.github.escortkeel.kchess.engine.Engine;
+import com.github.escortkeel.kchess.engine.OpeningBook;
+import java.io.IOException;
+import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 /**
  *
@@ -33,6 +38,8 @@ import javax.swing.JOptionPane;
  */
 public class GameFrame extends javax.swing.JFrame {
 
+    public static final long ENGINE_MILLIS = 2000;
+
     private final GameManager manager;
 
     /**
@@ -42,7 +49,6 @@ public class GameFrame extends javax.swing.JFrame {
         this.manager = manager;
 
         initComponents();
-        this.setSize(600, 650);
 
         setLocationRelativeTo(null);
     }
@@ -60,17 +66,20 @@ public class GameFrame extends javax.swing.JFrame {
         menuBar = new javax.swing.JMenuBar();
         fileMenu = new javax.swing.JMenu();
         newMenuItem = new javax.swing.JMenuItem();
+        undoMenuItem = new javax.swing.JMenuItem();
+        positionMenuItem = new javax.swing.JMenuItem();
         exitMenuItem = new javax.swing.JMenuItem();
+        engineMenu = new javax.swing.JMenu();
+        engineMoveMenuItem = new javax.swing.JMenuItem();
+        engineThreadsMenuItem = new javax.swing.JMenuItem();
+        engineBookMenuItem = new javax.swing.JMenuItem();
         helpMenu = new javax.swing.JMenu();
         aboutMenuItem = new javax.swing.JMenuItem();
 
         setDefaultCloseOperation(javax.swing.WindowConstants.EXIT_ON_CLOSE);
         setTitle("KChess - White's turn");
-        setMaximumSize(new java.awt.Dimension(600, 600));
-        setResizable(false);
 
-        boardPanel.setMaximumSize(new java.awt.Dimension(600, 600));
-        boardPanel.setMinimumSize(new java.awt.Dimension(600, 600));
+        boardPanel.setMinimumSize(new java.awt.Dimension(240, 240));
         getContentPane().add(boardPanel, java.awt.BorderLayout.CENTER);
 
         fileMenu.setText("File");
@@ -84,6 +93,24 @@ public class GameFrame extends javax.swing.JFrame {
         });
         fileMenu.add(newMenuItem);
 
+        undoMenuItem.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_Z, java.awt.event.InputEvent.CTRL_MASK));
+        undoMenuItem.setText("Undo Move");
+        undoMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                undoMenuItemActionPerformed(evt);
+            }
+        });
+        fileMenu.add(undoMenuItem);
+
+        positionMenuItem.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_L, java.awt.event.InputEvent.CTRL_MASK));
+        positionMenuItem.setText("Set Position...");
+        positionMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                positionMenuItemActionPerformed(evt);
+            }
+        });
+        fileMenu.add(positionMenuItem);
+
         exitMenuItem.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_W, java.awt.event.InputEvent.CTRL_MASK));
         exitMenuItem.setText("Exit");
         exitMenuItem.addActionListener(new java.awt.event.ActionListener() {
@@ -95,6 +122,35 @@ public class GameFrame extends javax.swing.JFrame {
 
         menuBar.add(fileMenu);
 
+        engineMenu.setText("Engine");
+
+        engineMoveMenuItem.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_E, java.awt.event.InputEvent.CTRL_MASK));
+        engineMoveMenuItem.setText("Play Move");
+        engineMoveMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                engineMoveMenuItemActionPerformed(evt);
+            }
+        });
+        engineMenu.add(engineMoveMenuItem);
+
+        engineThreadsMenuItem.setText("Threads...");
+        engineThreadsMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                engineThreadsMenuItemActionPerformed(evt);
+            }
+        });
+        engineMenu.add(engineThreadsMenuItem);
+
+        engineBookMenuItem.setText("Opening Book...");
+        engineBookMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                engineBookMenuItemActionPerformed(evt);
+            }
+        });
+        engineMenu.add(engineBookMenuItem);
+
+        menuBar.add(engineMenu);
+
         helpMenu.setText("Help");
 
         aboutMenuItem.setText("About");
@@ -122,6 +178,65 @@ public class GameFrame extends javax.swing.JFrame {
         }
     }//GEN-LAST:event_newMenuItemActionPerformed
 
+    private void undoMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_undoMenuItemActionPerformed
+        ((BoardPanel) boardPanel).undo();
+    }//GEN-LAST:event_undoMenuItemActionPerformed
+
+    private void positionMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_positionMenuItemActionPerformed
+        BoardPanel board = (BoardPanel) boardPanel;
+        Object answer = JOptionPane.showInputDialog(this, "Position in FEN:", "Set Position", JOptionPane.PLAIN_MESSAGE, null, null, board.getFen());
+        if (answer == null) {
+            return;
+        }
+
+        try {
+            board.setFen(answer.toString());
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Invalid position", JOptionPane.ERROR_MESSAGE);
+        }
+    }//GEN-LAST:event_positionMenuItemActionPerformed
+
+    private void engineMoveMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_engineMoveMenuItemActionPerformed
+        ((BoardPanel) boardPanel).playEngineMove(ENGINE_MILLIS);
+    }//GEN-LAST:event_engineMoveMenuItemActionPerformed
+
+    private void engineThreadsMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_engineThreadsMenuItemActionPerformed
+        BoardPanel board = (BoardPanel) boardPanel;
+        String answer = JOptionPane.showInputDialog(this, "Number of engine threads (1-" + Engine.availableThreads() + "):", board.getEngineThreads());
+        if (answer == null) {
+            return;
+        }
+
+        try {
+            int threads = Integer.parseInt(answer.trim());
+            if (threads < 1) {
+                throw new NumberFormatException();
+            }
+            board.setEngineThreads(threads);
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "\"" + answer + "\" is not a valid number of threads.", "Invalid number", JOptionPane.ERROR_MESSAGE);
+        }
+    }//GEN-LAST:event_engineThreadsMenuItemActionPerformed
+
+    private void engineBookMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_engineBookMenuItemActionPerformed
+        BoardPanel board = (BoardPanel) boardPanel;
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("Polyglot books", "bin"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        try {
+            OpeningBook old = board.getBook();
+            board.setBook(OpeningBook.open(chooser.getSelectedFile().getPath()));
+            if (old != null) {
+                old.close();
+            }
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Could not open " + chooser.getSelectedFile().getName() + ": " + e.getMessage(), "Invalid book", JOptionPane.ERROR_MESSAGE);
+        }
+    }//GEN-LAST:event_engineBookMenuItemActionPerformed
+
     private void aboutMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_aboutMenuItemActionPerformed
         new AboutDialog(this).setVisible(true);
     }//GEN-LAST:event_aboutMenuItemActionPerformed
@@ -129,11 +244,17 @@ public class GameFrame extends javax.swing.JFrame {
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JMenuItem aboutMenuItem;
     private javax.swing.JPanel boardPanel;
+    private javax.swing.JMenuItem engineBookMenuItem;
+    private javax.swing.JMenu engineMenu;
+    private javax.swing.JMenuItem engineMoveMenuItem;
+    private javax.swing.JMenuItem engineThreadsMenuItem;
     private javax.swing.JMenuItem exitMenuItem;
     private javax.swing.JMenu fileMenu;
     private javax.swing.JMenu helpMenu;
     private javax.swing.JMenuBar menuBar;
     private javax.swing.JMenuItem newMenuItem;
+    private javax.swing.JMenuItem positionMenuItem;
+    private javax.swing.JMenuItem undoMenuItem;
     // End of variables declaration//GEN-END:variables
 
     /**
@@ -25,359 +25,310 @@
  */
 package com.github.escortkeel.kchess;
 
+import com.github.escortkeel.kchess.board.Move;
+import com.github.escortkeel.kchess.board.MoveGenerator;
+import com.github.escortkeel.kchess.board.Position;
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.util.HashMap;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import javax.imageio.ImageIO;
-import static com.github.escortkeel.kchess.Piece.KING;
-import static com.github.escortkeel.kchess.Piece.ROOK;
 
 /**
+ * Loads the piece sprites and paints the board, and validates moves for the
+ * GUI. Move validation keeps no state, so one instance may validate moves for
+ * any number of games on any number of threads.
  *
  * @author Keeley Hoek (escortkeel@gmail.com)
  */
 public class GameManager {
 
-    public static final String IMAGESUFFIX = ".gif";
-    private final HashMap<String, Image> imageMap = new HashMap();
-    private final String teams[] = {"b", "w"};
-    private final String pieces[] = {"b", "k", "n", "p", "q", "r"};
-    private int[] dR = {1, -1, 0, 0, 1, 1, -1, -1};
-    private int[] dC = {0, 0, 1, -1, 1, -1, 1, -1};
-    private int castleVal = -1;
-
-    public GameManager() throws IOException {
-        for (String team : teams) {
-            for (String piece : pieces) {
-                imageMap.put(team + piece, ImageIO.read(GameManager.class.getResourceAsStream("/" + team + piece + IMAGESUFFIX)));
-            }
+    /**
+     * The piece sprites, packed in one image with a row for each team, white
+     * first, and a column for each piece in {@link Piece} order.
+     */
+    public static final String SPRITE_ATLAS = "/pieces.png";
+    public static final int SPRITE_WIDTH = 72;
+    public static final int SPRITE_HEIGHT = 64;
+    /**
+     * The square size, in pixels, which the sprites are drawn for.
+     */
+    public static final int DEFAULT_SQUARE_SIZE = 75;
+    /**
+     * The number of square sizes to keep rescaled sprites for.
+     */
+    public static final int MAX_CACHED_SIZES = 4;
+    private static final Piece[] PIECES = Piece.values();
+    private final FutureTask<Image[][]> sprites;
+    private final Map<Integer, Image[][]> scaledSprites = new LinkedHashMap<Integer, Image[][]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Image[][]> eldest) {
+            return size() > MAX_CACHED_SIZES;
         }
-    }
-
-    public boolean isInBounds(int r, int c) {
-        return ((r >= 0) && (r < 8)) && ((c >= 0) && (c < 8));
-    }
-
-    public int didCastle() {
-        int temp = castleVal;
-        castleVal = -1;
-        return temp;
-    }
-
-    public void drawBackground(Graphics g, Tile[][] tiles, int selectedR, int selectedC, int r, int c) {
-        if (selectedR == r && selectedC == c) {
-            g.setColor(Color.YELLOW);
-        } else if (canMove(tiles, selectedR, selectedC, r, c, false)) {
-            g.setColor(Color.GREEN);
-        } else {
-            g.setColor(((r + c) % 2) == 1 ? Color.GRAY : Color.WHITE);
+    };
+    private Image[][] lastScaled;
+    private int lastSize;
+    private static final ThreadLocal<Position> SCRATCH = new ThreadLocal<Position>() {
+        @Override
+        protected Position initialValue() {
+            return new Position();
         }
-
-        g.fillRect(c * 75, r * 75, 75, 75);
-    }
-
-    public void drawForeground(Graphics g, Tile t, int r, int c) {
-        if (t.getTeam() == Team.NONE) {
-            return;
+    };
+
+    /**
+     * Starts decoding the sprite atlas on a background thread, so that the
+     * frame can be built meanwhile. The first paint waits for it to finish.
+     *
+     * @throws IOException if the sprite atlas is missing
+     */
+    public GameManager() throws IOException {
+        final URL atlas = GameManager.class.getResource(SPRITE_ATLAS);
+        if (atlas == null) {
+            throw new IOException("Missing sprite atlas " + SPRITE_ATLAS);
         }
 
-        g.drawImage(imageMap.get(t.getTeam().toString() + t.getPiece().toString()), c * 75, r * 75, null);
-    }
-
-    public boolean isOver(Tile[][] board) {
-        boolean whiteKingFound = false, blackKingFound = false;
-
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (board[i][j].getTeam() == Team.WHITE) {
-                    if (board[i][j].getPiece() == Piece.KING) {
-                        whiteKingFound = true;
-                    }
-                }
-
-                if (board[i][j].getTeam() == Team.BLACK) {
-                    if (board[i][j].getPiece() == Piece.KING) {
-                        blackKingFound = true;
-                    }
-                }
+        sprites = new FutureTask<>(new Callable<Image[][]>() {
+            @Override
+            public Image[][] call() throws IOException {
+                return loadSprites(atlas);
             }
-        }
+        });
 
-        return !whiteKingFound || !blackKingFound;
+        Thread loader = new Thread(sprites, "kchess-sprites");
+        loader.setDaemon(true);
+        loader.start();
     }
 
-    public boolean canMove(Tile[][] tiles, int selectedR, int selectedC, int targetR, int targetC, boolean excecute) {
-        if (selectedR == -1 || selectedC == -1) {
-            return false;
+    /**
+     * Cuts the atlas into sprites indexed by {@link Team} and then
+     * {@link Piece} ordinal. The row for {@link Team#NONE} is empty.
+     */
+    private static Image[][] loadSprites(URL atlas) throws IOException {
+        BufferedImage image = ImageIO.read(atlas);
+
+        Image[][] sprites = new Image[Team.values().length][Piece.values().length];
+        for (Piece piece : Piece.values()) {
+            int x = piece.ordinal() * SPRITE_WIDTH;
+            sprites[Team.WHITE.ordinal()][piece.ordinal()] = image.getSubimage(x, 0, SPRITE_WIDTH, SPRITE_HEIGHT);
+            sprites[Team.BLACK.ordinal()][piece.ordinal()] = image.getSubimage(x, SPRITE_HEIGHT, SPRITE_WIDTH, SPRITE_HEIGHT);
         }
+        return sprites;
+    }
 
+    /**
+     * @return the sprite for {@code piece} of {@code team}, waiting for the
+     * atlas to be decoded if need be
+     */
+    public Image getSprite(Team team, Piece piece) {
         try {
-            if (tiles[selectedR][selectedC].getTeam() != Team.NONE) {
-                int direction = tiles[selectedR][selectedC].getTeam() == Team.WHITE ? -1 : 1;
-
-                switch (tiles[selectedR][selectedC].getPiece()) {
-                    case PAWN:
-                        return canPawn(tiles, selectedR, selectedC, targetR, targetC, direction);
-                    case KING:
-                        return canKing(tiles, selectedR, selectedC, targetR, targetC, direction, excecute);
-                    case QUEEN:
-                        return canBishop(tiles, selectedR, selectedC, targetR, targetC, direction)
-                                || canRook(tiles, selectedR, selectedC, targetR, targetC, direction);
-                    case BISHOP:
-                        return canBishop(tiles, selectedR, selectedC, targetR, targetC, direction);
-                    case ROOK:
-                        return canRook(tiles, selectedR, selectedC, targetR, targetC, direction);
-                    case KNIGHT:
-                        return canKnight(tiles, selectedR, selectedC, targetR, targetC, direction);
-                }
-            }
-        } catch (Exception e) {
+            return sprites.get()[team.ordinal()][piece.ordinal()];
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Could not decode " + SPRITE_ATLAS, ex.getCause());
         }
-
-        return false;
     }
 
-    private boolean canPawn(Tile[][] tiles, int selectedR, int selectedC, int targetR, int targetC, int direction) {
-        if (tiles[selectedR + direction][selectedC].getTeam() == Team.NONE) {
-            if (selectedR + direction == targetR && selectedC == targetC) {
-                return true;
-            } else if (!tiles[selectedR][selectedC].hasMoved() && selectedR + (2 * direction) == targetR && selectedC == targetC) {
-                return true;
-            }
-        }
-
-        if (selectedC + 1 == targetC && selectedR + direction == targetR) {
-            if (tiles[selectedR + direction][selectedC + 1].getTeam().ordinal() > 0
-                    && tiles[selectedR + direction][selectedC + 1].getTeam() != tiles[selectedR][selectedC].getTeam()) {
-                return true;
-            }
-        }
-
-        if (selectedC - 1 == targetC && selectedR + direction == targetR) {
-            if (tiles[selectedR + direction][selectedC - 1].getTeam().ordinal() > 0
-                    && tiles[selectedR + direction][selectedC - 1].getTeam() != tiles[selectedR][selectedC].getTeam()) {
-                return true;
-            }
-        }
-
-        return false;
+    public boolean isInBounds(int r, int c) {
+        return ((r >= 0) && (r < 8)) && ((c >= 0) && (c < 8));
     }
 
-    private boolean canKing(Tile[][] tiles, int selectedR, int selectedC, int targetR, int targetC, int direction, boolean excecute) {
-        for (int i = 0; i < 8; i++) {
-            if ((selectedR + dR[i]) == targetR && (selectedC + dC[i]) == targetC) {
-                if (tiles[targetR][targetC].getTeam() != tiles[selectedR][selectedC].getTeam()) {
-                    return true;
-                }
-
-                break;
-            }
+    /**
+     * @return the sprite for {@code piece} of {@code team}, scaled for squares
+     * of {@code size} pixels. Each size is scaled once and then cached, for
+     * the last {@link #MAX_CACHED_SIZES} sizes used.
+     */
+    public synchronized Image getSprite(Team team, Piece piece, int size) {
+        if (size != lastSize || lastScaled == null) {
+            Image[][] scaled = scaledSprites.get(size);
+            if (scaled == null) {
+                scaled = scaleSprites(size);
+                scaledSprites.put(size, scaled);
+            }
+            lastScaled = scaled;
+            lastSize = size;
         }
+        return lastScaled[team.ordinal()][piece.ordinal()];
+    }
 
-        if (!tiles[selectedR][selectedC].hasMoved()) {
-            if (!tiles[selectedR][0].hasMoved()) {
-                if (tiles[selectedR][1].getTeam() == Team.NONE
-                        && tiles[selectedR][2].getTeam() == Team.NONE
-                        && tiles[selectedR][3].getTeam() == Team.NONE) {
-                    if (targetR == selectedR && targetC == 2) {
-                        if (excecute) {
-                            castleVal = 2;
-                        }
-                        return true;
-                    }
-                }
+    private Image[][] scaleSprites(int size) {
+        Image[][] scaled = new Image[Team.values().length][];
+        for (Team team : Team.values()) {
+            if (team == Team.NONE) {
+                continue;
             }
 
-            if (!tiles[selectedR][7].hasMoved()) {
-                if (tiles[selectedR][6].getTeam() == Team.NONE
-                        && tiles[selectedR][5].getTeam() == Team.NONE) {
-                    if (targetR == selectedR && targetC == 6) {
-                        if (excecute) {
-                            castleVal = 6;
-                        }
-                        return true;
-                    }
+            scaled[team.ordinal()] = new Image[PIECES.length];
+            for (Piece piece : PIECES) {
+                Image sprite = getSprite(team, piece);
+                if (size != DEFAULT_SQUARE_SIZE && sprite != null) {
+                    sprite = scale(sprite, Math.max(1, SPRITE_WIDTH * size / DEFAULT_SQUARE_SIZE),
+                            Math.max(1, SPRITE_HEIGHT * size / DEFAULT_SQUARE_SIZE));
                 }
+                scaled[team.ordinal()][piece.ordinal()] = sprite;
             }
         }
-
-        return false;
+        return scaled;
     }
 
-    private boolean canKnight(Tile[][] tiles, int selectedR, int selectedC, int targetR, int targetC, int direction) {
-        if ((Math.abs(selectedR - targetR) == 1 && Math.abs(selectedC - targetC) == 2)
-                || (Math.abs(selectedR - targetR) == 2 && Math.abs(selectedC - targetC) == 1)) {
-            if (tiles[targetR][targetC].getTeam() != tiles[selectedR][selectedC].getTeam()) {
-                return true;
-            }
+    private static Image scale(Image sprite, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(sprite, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
         }
-
-        return false;
+        return image;
     }
 
-    private boolean canBishop(Tile[][] tiles, int selectedR, int selectedC, int targetR, int targetC, int direction) {
-        int delta;
-        for (delta = 1; delta < 8; delta++) {
-            if (!isInBounds(selectedR + delta, selectedC + delta)) {
-                break;
-            }
-
-            if (tiles[selectedR + delta][selectedC + delta].getTeam() != Team.NONE) {
-                break;
-            }
-
-            if ((selectedR + delta) == targetR && (selectedC + delta) == targetC) {
-                return true;
-            }
-        }
-
-        if (isInBounds(selectedR + delta, selectedC + delta)) {
-            if (selectedR + delta == targetR && selectedC + delta == targetC
-                    && tiles[selectedR + delta][selectedC + delta].getTeam() != tiles[selectedR][selectedC].getTeam()) {
-                return true;
-            }
+    /**
+     * Paints the square at row {@code r} and column {@code c}, for squares of
+     * {@code size} pixels, highlighting the selected square and the squares in
+     * {@code targets}.
+     */
+    public void drawBackground(Graphics g, int selected, long targets, int r, int c, int size) {
+        int sq = toSquare(r, c);
+        if (selected == sq) {
+            g.setColor(Color.YELLOW);
+        } else if ((targets & (1L << sq)) != 0) {
+            g.setColor(Color.GREEN);
+        } else {
+            g.setColor(((r + c) % 2) == 1 ? Color.GRAY : Color.WHITE);
         }
 
+        g.fillRect(c * size, r * size, size, size);
+    }
 
-        for (delta = 1; delta < 8; delta++) {
-            if (!isInBounds(selectedR + delta, selectedC - delta)) {
-                break;
-            }
-
-            if (tiles[selectedR + delta][selectedC - delta].getTeam() != Team.NONE) {
-                break;
-            }
-
-            if ((selectedR + delta) == targetR && (selectedC - delta) == targetC) {
-                return true;
-            }
+    public void drawForeground(Graphics g, Position position, int r, int c, int size) {
+        int piece = position.pieceAt(toSquare(r, c));
+        if (piece == Position.EMPTY) {
+            return;
         }
 
-        if (isInBounds(selectedR + delta, selectedC - delta)) {
-            if (selectedR + delta == targetR && selectedC - delta == targetC
-                    && tiles[selectedR + delta][selectedC - delta].getTeam() != tiles[selectedR][selectedC].getTeam()) {
-                return true;
-            }
-        }
+        g.drawImage(getSprite(toTeam(Position.colourOf(piece)), PIECES[Position.typeOf(piece)], size), c * size, r * size, null);
+    }
 
-        for (delta = 1; delta < 8; delta++) {
-            if (!isInBounds(selectedR - delta, selectedC + delta)) {
-                break;
-            }
+    /**
+     * @return a bitboard of the squares the piece on {@code from} may legally
+     * move to
+     */
+    public long legalTargets(Position position, int from) {
+        long targets = 0, candidates = position.targets(from);
+        while (candidates != 0) {
+            int to = Long.numberOfTrailingZeros(candidates);
+            if (validate(position, from, to, Position.QUEEN) != Move.NONE) {
+                targets |= 1L << to;
+            }
+            candidates &= candidates - 1;
+        }
+        return targets;
+    }
 
-            if (tiles[selectedR - delta][selectedC + delta].getTeam() != Team.NONE) {
-                break;
-            }
+    /**
+     * Validates a move for the side to move. The result carries the capture,
+     * en passant and castling flags and the promotion piece, which may be
+     * read with the {@link Move} accessors.
+     *
+     * @param promotion the piece type to promote to, if the move is a
+     * promotion
+     * @return the legal move, or {@link Move#NONE} if the move is illegal
+     */
+    public int validate(Position position, int from, int to, int promotion) {
+        return MoveGenerator.legalMove(position, from, to, promotion);
+    }
 
-            if ((selectedR - delta) == targetR && (selectedC + delta) == targetC) {
-                return true;
-            }
-        }
+    /**
+     * Finds the legal move from {@code from} to {@code to}, preferring a
+     * queen if the move is a promotion.
+     *
+     * @return the move, or {@link Move#NONE} if there is none
+     */
+    public int findMove(Position position, int from, int to) {
+        return validate(position, from, to, Position.QUEEN);
+    }
 
-        if (isInBounds(selectedR - delta, selectedC + delta)) {
-            if (selectedR - delta == targetR && selectedC + delta == targetC
-                    && tiles[selectedR - delta][selectedC + delta].getTeam() != tiles[selectedR][selectedC].getTeam()) {
-                return true;
-            }
+    /**
+     * Validates a move on a {@code Tile[][]} board, with the moving piece's
+     * team to move. Castling rights are taken from the kings and rooks which
+     * have not moved.
+     *
+     * @return the legal move, or {@link Move#NONE} if the move is illegal
+     */
+    public int validate(Tile[][] tiles, int selectedR, int selectedC, int targetR, int targetC) {
+        if (!isInBounds(selectedR, selectedC) || !isInBounds(targetR, targetC)
+                || tiles[selectedR][selectedC].getTeam() == Team.NONE) {
+            return Move.NONE;
         }
 
-        for (delta = 1; delta < 8; delta++) {
-            if (!isInBounds(selectedR - delta, selectedC - delta)) {
-                break;
-            }
+        Position scratch = SCRATCH.get();
+        load(scratch, tiles, tiles[selectedR][selectedC].getTeam());
 
-            if (tiles[selectedR - delta][selectedC - delta].getTeam() != Team.NONE) {
-                break;
-            }
+        return findMove(scratch, toSquare(selectedR, selectedC), toSquare(targetR, targetC));
+    }
 
-            if ((selectedR - delta) == targetR && (selectedC - delta) == targetC) {
-                return true;
-            }
-        }
+    public boolean canMove(Tile[][] tiles, int selectedR, int selectedC, int targetR, int targetC) {
+        return validate(tiles, selectedR, selectedC, targetR, targetC) != Move.NONE;
+    }
 
-        if (isInBounds(selectedR - delta, selectedC - delta)) {
-            if (selectedR - delta == targetR && selectedC - delta == targetC
-                    && tiles[selectedR - delta][selectedC - delta].getTeam() != tiles[selectedR][selectedC].getTeam()) {
-                return true;
-            }
-        }
+    public static int toSquare(int r, int c) {
+        return Position.square(c, 7 - r);
+    }
 
-        return false;
+    public static Team toTeam(int colour) {
+        return colour == Position.WHITE ? Team.WHITE : Team.BLACK;
     }
 
-    private boolean canRook(Tile[][] tiles, int selectedR, int selectedC, int targetR, int targetC, int direction) {
-        int checkR;
-        for (checkR = selectedR + 1; checkR < 8; checkR++) {
-            if (tiles[checkR][selectedC].getTeam() != Team.NONE) {
-                break;
-            }
+    public static int toColour(Team team) {
+        return team == Team.WHITE ? Position.WHITE : Position.BLACK;
+    }
 
-            if (checkR == targetR && selectedC == targetC) {
-                return true;
-            }
-        }
+    private static void load(Position scratch, Tile[][] tiles, Team toMove) {
+        scratch.clear();
 
-        if (checkR < 8) {
-            if (checkR == targetR && selectedC == targetC
-                    && tiles[checkR][selectedC].getTeam() != tiles[selectedR][selectedC].getTeam()) {
-                return true;
+        for (int r = 0; r < 8; r++) {
+            for (int c = 0; c < 8; c++) {
+                if (tiles[r][c].getTeam() != Team.NONE) {
+                    scratch.put(Position.piece(toColour(tiles[r][c].getTeam()), tiles[r][c].getPiece().ordinal()), toSquare(r, c));
+                }
             }
         }
 
-        for (checkR = selectedR - 1; checkR >= 0; checkR--) {
-            if (tiles[checkR][selectedC].getTeam() != Team.NONE) {
-                break;
-            }
-
-            if (checkR == targetR && selectedC == targetC) {
-                return true;
-            }
+        int castling = 0;
+        if (canCastle(tiles, 7, 7, Team.WHITE)) {
+            castling |= Position.WHITE_KINGSIDE;
         }
-
-        if (checkR >= 0) {
-            if (checkR == targetR && selectedC == targetC
-                    && tiles[checkR][selectedC].getTeam() != tiles[selectedR][selectedC].getTeam()) {
-                return true;
-            }
+        if (canCastle(tiles, 7, 0, Team.WHITE)) {
+            castling |= Position.WHITE_QUEENSIDE;
         }
-
-        int checkC;
-        for (checkC = selectedC + 1; checkC < 8; checkC++) {
-            if (tiles[selectedR][checkC].getTeam() != Team.NONE) {
-                break;
-            }
-
-            if (checkC == targetC && selectedR == targetR) {
-                return true;
-            }
+        if (canCastle(tiles, 0, 7, Team.BLACK)) {
+            castling |= Position.BLACK_KINGSIDE;
         }
-
-        if (checkC < 8) {
-            if (checkC == targetC && selectedR == targetR
-                    && tiles[selectedR][checkC].getTeam() != tiles[selectedR][selectedC].getTeam()) {
-                return true;
-            }
+        if (canCastle(tiles, 0, 0, Team.BLACK)) {
+            castling |= Position.BLACK_QUEENSIDE;
         }
 
-        for (checkC = selectedC - 1; checkC >= 0; checkC--) {
-            if (tiles[selectedR][checkC].getTeam() != Team.NONE) {
-                break;
-            }
-
-            if (checkC == targetC && selectedR == targetR) {
-                return true;
-            }
-        }
+        scratch.setCastlingRights(castling);
+        scratch.setSideToMove(toColour(toMove));
+    }
 
-        if (checkC >= 0) {
-            if (checkC == targetC && selectedR == targetR
-                    && tiles[selectedR][checkC].getTeam() != tiles[selectedR][selectedC].getTeam()) {
-                return true;
-            }
-        }
+    private static boolean canCastle(Tile[][] tiles, int r, int rookC, Team team) {
+        return isUnmoved(tiles[r][4], team, Piece.KING) && isUnmoved(tiles[r][rookC], team, Piece.ROOK);
+    }
 
-        return false;
+    private static boolean isUnmoved(Tile t, Team team, Piece piece) {
+        return t.getTeam() == team && t.getPiece() == piece && !t.hasMoved();
     }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess;
+
+import com.github.escortkeel.kchess.engine.Engine;
+import com.github.escortkeel.kchess.io.Game;
+import com.github.escortkeel.kchess.io.PgnReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a PGN database headless, splitting the file at game boundaries and
+ * decoding each part on its own thread, and prints what was read.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public class Import {
+
+    private static void usage() {
+        System.err.println("usage: import [--threads n] file.pgn");
+        System.exit(2);
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String args[]) throws IOException, InterruptedException {
+        int threads = Engine.availableThreads();
+        String file = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else {
+                    file = args[i];
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            usage();
+        }
+        if (file == null || threads < 1) {
+            usage();
+        }
+
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (FileChannel channel = new RandomAccessFile(new File(file), "r").getChannel()) {
+            long[] boundaries = PgnReader.split(channel, threads);
+
+            List<Future<long[]>> parts = new ArrayList<>();
+            for (int i = 0; i + 1 < boundaries.length; i++) {
+                final PgnReader reader = new PgnReader(channel, boundaries[i], boundaries[i + 1]);
+                parts.add(pool.submit(new Callable<long[]>() {
+                    @Override
+                    public long[] call() {
+                        long games = 0, plies = 0;
+                        while (reader.hasNext()) {
+                            Game game = reader.next();
+                            games++;
+                            plies += game.length();
+                        }
+                        return new long[]{games, plies, reader.errors()};
+                    }
+                }));
+            }
+
+            long games = 0, plies = 0, errors = 0;
+            for (Future<long[]> part : parts) {
+                long[] counts = part.get();
+                games += counts[0];
+                plies += counts[1];
+                errors += counts[2];
+            }
+
+            long millis = Math.max(1, System.currentTimeMillis() - start);
+            System.out.println(games + " games, " + plies + " plies read in " + millis + " ms ("
+                    + games * 1000 / millis + " games/s, " + plies * 1000 / millis + " plies/s), "
+                    + errors + " games skipped");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
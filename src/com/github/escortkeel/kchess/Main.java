@@ -25,7 +25,10 @@
  */
 package com.github.escortkeel.kchess;
 
+import com.github.escortkeel.kchess.server.ClientSimulator;
+import com.github.escortkeel.kchess.server.GameServer;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  *
@@ -36,7 +39,36 @@ public class Main {
     /**
      * @param args the command line arguments
      */
-    public static void main(String args[]) throws IOException {
+    public static void main(String args[]) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("perft")) {
+            Perft.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        } else if (args.length > 0 && args[0].equals("analyse")) {
+            Analyse.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        } else if (args.length > 0 && args[0].equals("selfplay")) {
+            SelfPlay.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        } else if (args.length > 0 && args[0].equals("import")) {
+            Import.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        } else if (args.length > 0 && args[0].equals("archive")) {
+            Archive.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        } else if (args.length > 0 && args[0].equals("book")) {
+            Book.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        } else if (args.length > 0 && args[0].equals("tablebase")) {
+            Tablebase.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        } else if (args.length > 0 && args[0].equals("server")) {
+            GameServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        } else if (args.length > 0 && args[0].equals("simulate")) {
+            ClientSimulator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         /* Set the Nimbus look and feel */
         //<editor-fold defaultstate="collapsed" desc=" Look and feel setting code (optional) ">
         /* If Nimbus (introduced in Java SE 6) is not available, stay with the default look and feel.
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess;
+
+import com.github.escortkeel.kchess.board.Fen;
+import com.github.escortkeel.kchess.board.Move;
+import com.github.escortkeel.kchess.board.MoveGenerator;
+import com.github.escortkeel.kchess.board.Position;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Counts the leaf nodes of the legal move tree to a fixed depth, both as a
+ * benchmark of the move rules and as a check of their correctness. The
+ * tree is walked in place with make/unmake.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public class Perft {
+
+    /**
+     * Reference positions with their known node counts at depths 1, 2, ...
+     * The last two check that an en passant square is only honoured when a
+     * pawn could just have double pushed over it.
+     */
+    private static final Object[][] SUITE = {
+        {Fen.START,
+            new long[]{20, 400, 8902, 197281, 4865609, 119060324}},
+        {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            new long[]{48, 2039, 97862, 4085603, 193690690}},
+        {"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            new long[]{14, 191, 2812, 43238, 674624, 11030083}},
+        {"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            new long[]{6, 264, 9467, 422333, 15833292}},
+        {"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            new long[]{44, 1486, 62379, 2103487, 89941194}},
+        {"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+            new long[]{46, 2079, 89890, 3894594, 164075551}},
+        {"4k3/8/8/3P4/8/8/8/4K3 w - e6 0 1",
+            new long[]{6, 29, 218, 1274}},
+        {"4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1",
+            new long[]{7, 38, 276, 1786}}
+    };
+    private static final int MAX_DEPTH = 64;
+    private final Position position = new Position();
+    private final int[][] moves = new int[MAX_DEPTH + 1][MoveGenerator.MAX_MOVES];
+
+    public Perft(Position root) {
+        position.copyFrom(root);
+    }
+
+    public long perft(int depth) {
+        return perft(0, depth);
+    }
+
+    private long perft(int ply, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+
+        int count = MoveGenerator.generateMoves(position, moves[ply]);
+        if (depth == 1) {
+            return count;
+        }
+
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            position.makeMove(moves[ply][i]);
+            nodes += perft(ply + 1, depth - 1);
+            position.unmakeMove();
+        }
+        return nodes;
+    }
+
+    /**
+     * Prints the node count below each root move, then the total.
+     */
+    public long divide(int depth) {
+        int count = MoveGenerator.generateMoves(position, moves[0]);
+
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            position.makeMove(moves[0][i]);
+            long n = perft(1, depth - 1);
+            position.unmakeMove();
+
+            System.out.println(Move.toString(moves[0][i]) + ": " + n);
+            nodes += n;
+        }
+        return nodes;
+    }
+
+    /**
+     * Runs every reference position up to the deepest depth whose known
+     * count does not exceed {@code maxNodes}.
+     *
+     * @return whether every count matched
+     */
+    public static boolean runSuite(long maxNodes) {
+        boolean passed = true;
+        long totalNodes = 0, totalTime = 0;
+
+        Position position = new Position();
+        for (Object[] entry : SUITE) {
+            String fen = (String) entry[0];
+            long[] expected = (long[]) entry[1];
+
+            Fen.load(position, fen);
+            Perft perft = new Perft(position);
+            boolean matched = true;
+            for (int depth = 1; depth <= expected.length && expected[depth - 1] <= maxNodes; depth++) {
+                long start = System.nanoTime();
+                long nodes = perft.perft(depth);
+                long elapsed = System.nanoTime() - start;
+
+                totalNodes += nodes;
+                totalTime += elapsed;
+
+                if (nodes != expected[depth - 1]) {
+                    System.out.println("FAIL " + fen + " depth " + depth + ": expected " + expected[depth - 1] + ", got " + nodes);
+                    matched = false;
+                }
+            }
+            System.out.println((matched ? "ok   " : "FAIL ") + fen);
+            passed &= matched;
+        }
+
+        System.out.println(totalNodes + " nodes in " + (totalTime / 1000000) + " ms (" + nps(totalNodes, totalTime) + " nps)");
+        return passed;
+    }
+
+    private static long nps(long nodes, long nanos) {
+        return nanos == 0 ? 0 : nodes * 1000000000L / nanos;
+    }
+
+    /**
+     * Runs every position in {@code file}, one FEN per line, to
+     * {@code depth}. Blank lines and lines starting with '#' are skipped.
+     */
+    private static void runFile(String file, int depth) throws IOException {
+        Perft perft = new Perft(new Position());
+        long positions = 0, nodes = 0;
+
+        long start = System.nanoTime();
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (buffer.hasRemaining()) {
+                byte first = buffer.get(buffer.position());
+                if (first == '#' || first == '\n' || first == '\r') {
+                    while (buffer.hasRemaining() && buffer.get() != '\n') {
+                    }
+                    continue;
+                }
+
+                Fen.load(perft.position, buffer);
+                nodes += perft.perft(depth);
+                positions++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(positions + " positions, perft(" + depth + ") = " + nodes + " in " + (elapsed / 1000000) + " ms (" + nps(nodes, elapsed) + " nps)");
+    }
+
+    private static void usage() {
+        System.err.println("usage: perft <depth> [fen] [--divide]");
+        System.err.println("       perft <depth> --file positions.fen");
+        System.err.println("       perft --suite [max-nodes]");
+        System.exit(2);
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String args[]) throws IOException {
+        if (args.length == 0) {
+            usage();
+        }
+
+        if (args[0].equals("--suite")) {
+            long maxNodes = args.length > 1 ? Long.parseLong(args[1]) : 5000000;
+            System.exit(runSuite(maxNodes) ? 0 : 1);
+        }
+
+        int depth = Integer.parseInt(args[0]);
+        String fen = Fen.START, file = null;
+        boolean divide = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--divide")) {
+                divide = true;
+            } else if (args[i].equals("--file") && i + 1 < args.length) {
+                file = args[++i];
+            } else {
+                fen = args[i];
+            }
+        }
+
+        if (depth < 1 || depth > MAX_DEPTH) {
+            usage();
+        }
+
+        if (file != null) {
+            runFile(file, depth);
+            return;
+        }
+
+        Position position = new Position();
+        Fen.load(position, fen);
+        Perft perft = new Perft(position);
+
+        long start = System.nanoTime();
+        long nodes = divide ? perft.divide(depth) : perft.perft(depth);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("perft(" + depth + ") = " + nodes + " in " + (elapsed / 1000000) + " ms (" + nps(nodes, elapsed) + " nps)");
+    }
+}
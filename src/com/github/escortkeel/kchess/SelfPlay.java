@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess;
+
+import com.github.escortkeel.kchess.board.Fen;
+import com.github.escortkeel.kchess.board.GameResult;
+import com.github.escortkeel.kchess.board.Move;
+import com.github.escortkeel.kchess.board.Position;
+import com.github.escortkeel.kchess.engine.Engine;
+import com.github.escortkeel.kchess.engine.OpeningBook;
+import com.github.escortkeel.kchess.engine.Search;
+import com.github.escortkeel.kchess.engine.SearchResult;
+import com.github.escortkeel.kchess.engine.TimeManager;
+import com.github.escortkeel.kchess.io.Game;
+import com.github.escortkeel.kchess.io.PgnWriter;
+import com.github.escortkeel.kchess.tablebase.Tablebases;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Plays batches of engine games headless. Games run concurrently, one per
+ * worker thread, each worker with its own single-threaded {@link Engine}.
+ * Openings are taken in turn from a list of FENs and finished games are
+ * streamed to a PGN file as they complete.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public class SelfPlay {
+
+    /**
+     * Games still running after this many plies are adjudicated drawn.
+     */
+    public static final int DEFAULT_MAX_PLIES = 400;
+    private final List<String> openings;
+    private final int games;
+    private final int workers;
+    private final long millis;
+    private final long nodes;
+    private final int hash;
+    private final int maxPlies;
+    private final PgnWriter pgn;
+    private OpeningBook book;
+    private Tablebases tablebases;
+    private final AtomicInteger nextGame = new AtomicInteger();
+    private final AtomicLong searchedNodes = new AtomicLong();
+    private final AtomicLong searchedMillis = new AtomicLong();
+    private final AtomicLongArray terminations = new AtomicLongArray(GameResult.values().length + 2);
+    private final AtomicLongArray scores = new AtomicLongArray(3);
+
+    public SelfPlay(List<String> openings, int games, int workers, long millis, long nodes, int hash, int maxPlies, PgnWriter pgn) {
+        this.openings = openings;
+        this.games = games;
+        this.workers = workers;
+        this.millis = millis;
+        this.nodes = nodes;
+        this.hash = hash;
+        this.maxPlies = Math.min(maxPlies, Position.MAX_PLY - Search.MAX_PLY);
+        this.pgn = pgn;
+    }
+
+    /**
+     * Sets a book for every engine to play from, shared between the workers.
+     * Must be called before {@link #run}.
+     */
+    public void setBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /**
+     * Sets endgame tables for every engine to probe, shared between the
+     * workers. Games are adjudicated as soon as they reach a position in a
+     * table, unless the mate would come after the fifty-move rule could
+     * intervene, in which case they are played on. Must be called before
+     * {@link #run}.
+     */
+    public void setTablebases(Tablebases tablebases) {
+        this.tablebases = tablebases;
+    }
+
+    /**
+     * Plays every game, blocking until they have all finished.
+     */
+    public void run() throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Void>> running = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                running.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        work();
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Void> future : running) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void work() throws IOException {
+        Engine engine = new Engine(hash, 1);
+        engine.setBook(book);
+        engine.setTablebases(tablebases);
+        Position position = new Position();
+
+        int index;
+        while ((index = nextGame.getAndIncrement()) < games) {
+            engine.transpositionTable().clear();
+            pgn.write(play(engine, position, index));
+        }
+    }
+
+    private Game play(Engine engine, Position position, int index) {
+        String opening = openings.get(index % openings.size());
+        Fen.load(position, opening);
+
+        Game game = new Game();
+        game.setTag("Event", "KChess self-play");
+        game.setTag("Date", new SimpleDateFormat("yyyy.MM.dd").format(new Date()));
+        game.setTag("Round", Integer.toString(index + 1));
+        game.setTag("White", "KChess");
+        game.setTag("Black", "KChess");
+        game.setFen(opening);
+
+        GameResult result;
+        int adjudicated = Tablebases.UNKNOWN;
+        while (!(result = position.gameResult()).isOver() && position.ply() < maxPlies) {
+            if (tablebases != null) {
+                int value = tablebases.probe(position);
+                if (value == 0 || (value != Tablebases.UNKNOWN
+                        && position.halfmoveClock() + Tablebases.plies(value) <= 100)) {
+                    adjudicated = value;
+                    break;
+                }
+            }
+
+            SearchResult searched = engine.search(position, new TimeManager(millis, nodes), Search.MAX_PLY);
+            searchedNodes.addAndGet(searched.nodes());
+            searchedMillis.addAndGet(searched.millis());
+
+            if (searched.bestMove() == Move.NONE) {
+                break;
+            }
+            game.addMove(searched.bestMove());
+            position.makeMove(searched.bestMove());
+        }
+
+        int winner = -1;
+        if (result == GameResult.CHECKMATE || Tablebases.isLoss(adjudicated)) {
+            winner = position.sideToMove() ^ 1;
+        } else if (Tablebases.isWin(adjudicated)) {
+            winner = position.sideToMove();
+        }
+
+        if (winner != -1) {
+            boolean whiteWins = winner == Position.WHITE;
+            game.setResult(whiteWins ? Game.WHITE_WINS : Game.BLACK_WINS);
+            scores.incrementAndGet(whiteWins ? 0 : 1);
+        } else {
+            game.setResult(Game.DRAW);
+            scores.incrementAndGet(2);
+        }
+
+        if (result.isOver()) {
+            game.setTag("Termination", result.toString());
+            terminations.incrementAndGet(result.ordinal());
+        } else if (adjudicated != Tablebases.UNKNOWN) {
+            game.setTag("Termination", "Tablebase");
+            terminations.incrementAndGet(GameResult.values().length + 1);
+        } else {
+            game.setTag("Termination", "Move limit");
+            terminations.incrementAndGet(GameResult.values().length);
+        }
+        return game;
+    }
+
+    /**
+     * @return a summary of the games played so far
+     */
+    public String statistics(long elapsedMillis) {
+        long played = scores.get(0) + scores.get(1) + scores.get(2);
+        StringBuilder sb = new StringBuilder();
+        sb.append(played).append(" games in ").append(elapsedMillis / 1000.0).append(" s (")
+                .append(played * 3600000L / Math.max(1, elapsedMillis)).append(" games/hour)\n");
+        sb.append("+").append(scores.get(0)).append(" -").append(scores.get(1)).append(" =").append(scores.get(2))
+                .append(" (white wins, black wins, draws)\n");
+        sb.append(searchedNodes.get()).append(" nodes, ")
+                .append(searchedNodes.get() * 1000 / Math.max(1, searchedMillis.get())).append(" nps per worker\n");
+        for (GameResult result : GameResult.values()) {
+            if (result.isOver()) {
+                sb.append(result).append(": ").append(terminations.get(result.ordinal())).append('\n');
+            }
+        }
+        sb.append("Move limit: ").append(terminations.get(GameResult.values().length));
+        if (tablebases != null) {
+            sb.append("\nTablebase: ").append(terminations.get(GameResult.values().length + 1));
+        }
+        return sb.toString();
+    }
+
+    private static void usage() {
+        System.err.println("usage: selfplay [--games n] [--concurrency n] [--millis n] [--nodes n] [--hash mb]"
+                + " [--max-plies n] [--openings file] [--book file.bin] [--tablebases dir] [--out file]");
+        System.exit(2);
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String args[]) throws IOException, InterruptedException {
+        int games = 100, workers = Engine.availableThreads(), hash = 16, maxPlies = DEFAULT_MAX_PLIES;
+        long millis = 100, nodes = TimeManager.UNLIMITED;
+        String openingsFile = null, bookFile = null, tablebaseDir = null, outFile = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--games")) {
+                    games = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--concurrency")) {
+                    workers = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--millis")) {
+                    millis = Long.parseLong(args[++i]);
+                } else if (args[i].equals("--nodes")) {
+                    nodes = Long.parseLong(args[++i]);
+                    millis = TimeManager.UNLIMITED;
+                } else if (args[i].equals("--hash")) {
+                    hash = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--max-plies")) {
+                    maxPlies = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--openings")) {
+                    openingsFile = args[++i];
+                } else if (args[i].equals("--book")) {
+                    bookFile = args[++i];
+                } else if (args[i].equals("--tablebases")) {
+                    tablebaseDir = args[++i];
+                } else if (args[i].equals("--out")) {
+                    outFile = args[++i];
+                } else {
+                    usage();
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            usage();
+        }
+        if (games < 1 || workers < 1) {
+            usage();
+        }
+
+        List<String> openings = new ArrayList<>();
+        if (openingsFile == null) {
+            openings.add(Fen.START);
+        } else {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(openingsFile), StandardCharsets.UTF_8))) {
+                String line;
+                Position check = new Position();
+                while ((line = in.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        Fen.load(check, line);
+                        openings.add(line);
+                    }
+                }
+            }
+            if (openings.isEmpty()) {
+                System.err.println("No openings in " + openingsFile);
+                System.exit(1);
+            }
+        }
+
+        OutputStreamWriter out = outFile == null
+                ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                : new OutputStreamWriter(new FileOutputStream(outFile), StandardCharsets.UTF_8);
+        SelfPlay selfPlay;
+        long start = System.currentTimeMillis();
+        try (PgnWriter pgn = new PgnWriter(out);
+                OpeningBook book = bookFile == null ? null : OpeningBook.open(bookFile)) {
+            selfPlay = new SelfPlay(openings, games, Math.min(workers, games), millis, nodes, hash, maxPlies, pgn);
+            selfPlay.setBook(book);
+            selfPlay.setTablebases(tablebaseDir == null ? null : new Tablebases(new File(tablebaseDir)));
+            selfPlay.run();
+        }
+        System.err.println(selfPlay.statistics(System.currentTimeMillis() - start));
+    }
+}
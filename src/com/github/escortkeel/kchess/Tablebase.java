@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess;
+
+import com.github.escortkeel.kchess.board.Fen;
+import com.github.escortkeel.kchess.board.MoveGenerator;
+import com.github.escortkeel.kchess.board.Position;
+import com.github.escortkeel.kchess.board.San;
+import com.github.escortkeel.kchess.tablebase.Generator;
+import com.github.escortkeel.kchess.tablebase.Tablebases;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates endgame tables and looks positions up in them.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public class Tablebase {
+
+    private static final int LOOKUPS = 100000;
+
+    private static void usage() {
+        System.err.println("usage: tablebase generate [--threads n] [--dir d] names...");
+        System.err.println("       tablebase probe dir [fen]");
+        System.exit(2);
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String args[]) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            usage();
+        }
+
+        if (args[0].equals("generate")) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            File dir = new File(".");
+            List<String> names = new ArrayList<>();
+            try {
+                for (int i = 1; i < args.length; i++) {
+                    if (args[i].equals("--threads")) {
+                        threads = Integer.parseInt(args[++i]);
+                    } else if (args[i].equals("--dir")) {
+                        dir = new File(args[++i]);
+                    } else {
+                        names.add(args[i]);
+                    }
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                usage();
+            }
+            if (names.isEmpty() || threads < 1) {
+                usage();
+            }
+            generate(dir, threads, names);
+        } else if (args[0].equals("probe") && args.length <= 3) {
+            probe(args[1], args.length == 3 ? args[2] : Fen.START);
+        } else {
+            usage();
+        }
+    }
+
+    private static void generate(File dir, int threads, List<String> names) throws IOException, InterruptedException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+
+        Generator generator = new Generator(new Tablebases(dir), threads);
+        for (String name : names) {
+            List<String> plan;
+            try {
+                plan = generator.plan(name);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+                return;
+            }
+            for (String table : plan) {
+                System.out.println(generator.generate(table));
+            }
+        }
+    }
+
+    private static void probe(String dir, String fen) throws IOException {
+        Position position = new Position();
+        Fen.load(position, fen);
+
+        Tablebases tablebases = new Tablebases(new File(dir));
+        int value = tablebases.probe(position);
+        if (value == Tablebases.UNKNOWN) {
+            System.out.println("not in any table");
+            return;
+        }
+        System.out.println(describe(value));
+
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateMoves(position, moves);
+        for (int i = 0; i < count; i++) {
+            String san = San.toString(position, moves[i]);
+            position.makeMove(moves[i]);
+            int reply = tablebases.probe(position);
+            position.unmakeMove();
+            System.out.printf("%-8s %s%n", san, reply == Tablebases.UNKNOWN ? "unknown" : describe(reply == 0 ? 0
+                    : reply > 0 ? -(reply + 2) : -reply));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            tablebases.probe(position);
+        }
+        System.out.println((System.nanoTime() - start) / LOOKUPS + " ns per lookup");
+    }
+
+    private static String describe(int value) {
+        if (value == 0) {
+            return "draw";
+        }
+        return (value > 0 ? "win" : "loss") + " in " + Tablebases.plies(value) + " plies";
+    }
+}
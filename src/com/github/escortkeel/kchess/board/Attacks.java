@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.board;
+
+/**
+ * Attack sets for every piece type, indexed by square (a1 = 0, h8 = 63).
+ * Leaper attacks are precomputed per square. Slider attacks are looked up
+ * with magic bitboards: the relevant occupancy is multiplied by a per-square
+ * magic number whose top bits index a table of attack sets, filled once at
+ * class initialisation.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class Attacks {
+
+    private static final long[] KNIGHT = new long[64];
+    private static final long[] KING = new long[64];
+    private static final long[][] PAWN = new long[2][64];
+    private static final int[] KNIGHT_DR = {1, 2, 2, 1, -1, -2, -2, -1};
+    private static final int[] KNIGHT_DF = {2, 1, -1, -2, -2, -1, 1, 2};
+    private static final int[] KING_DR = {1, 1, 1, 0, 0, -1, -1, -1};
+    private static final int[] KING_DF = {1, 0, -1, 1, -1, 1, 0, -1};
+    private static final int[] BISHOP_DR = {1, 1, -1, -1};
+    private static final int[] BISHOP_DF = {1, -1, 1, -1};
+    private static final int[] ROOK_DR = {1, -1, 0, 0};
+    private static final int[] ROOK_DF = {0, 0, 1, -1};
+    private static final long[] ROOK_MASK = new long[64];
+    private static final long[] ROOK_MAGIC = {
+        0x8080108000204002L, 0xA240034010002000L, 0x04801000A0048008L, 0x0100080420100101L,
+        0x4A00020008100420L, 0x1200020004081001L, 0x1080508001000200L, 0x1200020040803904L,
+        0x0284800040008020L, 0x0000402000401000L, 0x8004802000100484L, 0x020A00110A00C020L,
+        0x4021001100040800L, 0x2016005054085200L, 0xA844808002000100L, 0x0002000608904104L,
+        0x4080004000402000L, 0x0410004040002000L, 0x000082801000200AL, 0xC010008008001082L,
+        0x0004808008000400L, 0x0104004002004100L, 0x8000808001000200L, 0x0400820000408401L,
+        0x4000618180004010L, 0xA400500040002000L, 0xC131001100200046L, 0x0180100080800800L,
+        0x2044008080040800L, 0x0002005200280410L, 0x0018B00400C20801L, 0x1404408200004104L,
+        0x0804844004800020L, 0x2000810029004006L, 0x1100900081802000L, 0x2020080080801000L,
+        0x0000810401800801L, 0x1002000402001008L, 0x08011011A4000208L, 0x0200126C82000401L,
+        0x8380002000424000L, 0x0020003000404004L, 0x0050040028002000L, 0x0010010008110020L,
+        0x0840080004008080L, 0x080C000200048080L, 0x2C01000200010004L, 0x0000045500A20004L,
+        0x040E400070800080L, 0x0000400220100240L, 0x0004864094220200L, 0x0208100100200900L,
+        0x0A00080080040080L, 0x0001810200040080L, 0x0800100801420400L, 0x0000010040840200L,
+        0x02008001001C2041L, 0x2042010010402082L, 0x4E00200040090011L, 0x0002841900601001L,
+        0x0102000820110402L, 0x00B300180A040003L, 0x0084020090010804L, 0x10A7010C00802042L
+    };
+    private static final int[] ROOK_SHIFT = new int[64];
+    private static final int[] ROOK_OFFSET = new int[64];
+    private static final long[] ROOK_TABLE = new long[102400];
+    private static final long[] BISHOP_MASK = new long[64];
+    private static final long[] BISHOP_MAGIC = {
+        0x80C0020200410104L, 0x0082301410848181L, 0x2021080080820000L, 0x004804A900100000L,
+        0x8002021020000003L, 0x000088200840240AL, 0x0820808808400280L, 0x20010048040402A0L,
+        0x0848050490240100L, 0x80180202C4050205L, 0x0000109100410844L, 0x0020844046808002L,
+        0xA040011041400000L, 0x0010820230060050L, 0x8005021210040400L, 0x0008220084442204L,
+        0x02400120040400C8L, 0x1408860450008A00L, 0x2082013014004408L, 0x0828140082004002L,
+        0x08C4001A00942109L, 0x002A000101008200L, 0x0180803402482200L, 0x0011944044038800L,
+        0x0418200043021220L, 0x5010100202022210L, 0x00B0820090040011L, 0x2041080049004100L,
+        0x8010840000802014L, 0x0400820004221000L, 0x0004040009008240L, 0x000120200042080AL,
+        0x0202600402200804L, 0x0001184204189041L, 0x040C180800840040L, 0x08C89A0080080182L,
+        0x0200440400004100L, 0x4402440040080800L, 0x4041024080420810L, 0x0008004081005218L,
+        0x4142021040200401L, 0x8B0208020808020AL, 0x04A4402401081003L, 0x0010404200809803L,
+        0x5004020202043410L, 0x1C40080808409020L, 0x004218091110C402L, 0xC0100E0041100140L,
+        0x2302008220100000L, 0x0001084104A02100L, 0x1810221500880810L, 0x2080090420A80080L,
+        0x9400201020222310L, 0x0020050408120000L, 0x1850901030AA9200L, 0x4008104410405000L,
+        0x0100208210A02021L, 0x2000002402480420L, 0x490000060201048CL, 0x2240A00110840400L,
+        0x0091200011420204L, 0x0080002244011E00L, 0x2000212411022400L, 0x1D404890810A00A0L
+    };
+    private static final int[] BISHOP_SHIFT = new int[64];
+    private static final int[] BISHOP_OFFSET = new int[64];
+    private static final long[] BISHOP_TABLE = new long[5248];
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            KNIGHT[sq] = leaper(sq, KNIGHT_DR, KNIGHT_DF);
+            KING[sq] = leaper(sq, KING_DR, KING_DF);
+            PAWN[Position.WHITE][sq] = leaper(sq, new int[]{1, 1}, new int[]{1, -1});
+            PAWN[Position.BLACK][sq] = leaper(sq, new int[]{-1, -1}, new int[]{1, -1});
+        }
+
+        initMagics(ROOK_MASK, ROOK_MAGIC, ROOK_SHIFT, ROOK_OFFSET, ROOK_TABLE, ROOK_DR, ROOK_DF);
+        initMagics(BISHOP_MASK, BISHOP_MAGIC, BISHOP_SHIFT, BISHOP_OFFSET, BISHOP_TABLE, BISHOP_DR, BISHOP_DF);
+    }
+
+    private Attacks() {
+    }
+
+    private static boolean isInBounds(int rank, int file) {
+        return ((rank >= 0) && (rank < 8)) && ((file >= 0) && (file < 8));
+    }
+
+    private static long leaper(int sq, int[] dR, int[] dF) {
+        long attacks = 0;
+        for (int i = 0; i < dR.length; i++) {
+            int rank = (sq >>> 3) + dR[i], file = (sq & 7) + dF[i];
+            if (isInBounds(rank, file)) {
+                attacks |= 1L << (rank * 8 + file);
+            }
+        }
+        return attacks;
+    }
+
+    private static long slider(int sq, long occupied, int[] dR, int[] dF) {
+        long attacks = 0;
+        for (int i = 0; i < dR.length; i++) {
+            int rank = (sq >>> 3) + dR[i], file = (sq & 7) + dF[i];
+            while (isInBounds(rank, file)) {
+                long bit = 1L << (rank * 8 + file);
+                attacks |= bit;
+                if ((occupied & bit) != 0) {
+                    break;
+                }
+                rank += dR[i];
+                file += dF[i];
+            }
+        }
+        return attacks;
+    }
+
+    /**
+     * Fills a slider attack table by enumerating every relevant occupancy of
+     * each square and indexing it with the precomputed magic.
+     */
+    private static void initMagics(long[] masks, long[] magics, int[] shifts, int[] offsets, long[] table, int[] dR, int[] dF) {
+        long[] occupancies = new long[4096], references = new long[4096];
+        int[] epoch = new int[4096];
+        int offset = 0;
+
+        for (int sq = 0; sq < 64; sq++) {
+            long edges = ((0xFFL | 0xFFL << 56) & ~(0xFFL << (sq & ~7)))
+                    | ((0x0101010101010101L | 0x8080808080808080L) & ~(0x0101010101010101L << (sq & 7)));
+            long mask = slider(sq, 0, dR, dF) & ~edges;
+            int bits = Long.bitCount(mask);
+
+            int n = 0;
+            long subset = 0;
+            do {
+                occupancies[n] = subset;
+                references[n++] = slider(sq, subset, dR, dF);
+                subset = (subset - mask) & mask;
+            } while (subset != 0);
+
+            masks[sq] = mask;
+            shifts[sq] = 64 - bits;
+            offsets[sq] = offset;
+
+            for (int i = 0; i < n; i++) {
+                int index = (int) ((occupancies[i] * magics[sq]) >>> shifts[sq]);
+                if (epoch[index] < sq + 1) {
+                    epoch[index] = sq + 1;
+                    table[offset + index] = references[i];
+                } else if (table[offset + index] != references[i]) {
+                    throw new IllegalStateException("Bad magic for square " + sq);
+                }
+            }
+
+            offset += 1 << bits;
+        }
+    }
+
+    public static long knight(int sq) {
+        return KNIGHT[sq];
+    }
+
+    public static long king(int sq) {
+        return KING[sq];
+    }
+
+    /**
+     * @return the squares attacked by a pawn of the given colour on {@code sq}
+     */
+    public static long pawn(int colour, int sq) {
+        return PAWN[colour][sq];
+    }
+
+    public static long bishop(int sq, long occupied) {
+        return BISHOP_TABLE[BISHOP_OFFSET[sq] + (int) (((occupied & BISHOP_MASK[sq]) * BISHOP_MAGIC[sq]) >>> BISHOP_SHIFT[sq])];
+    }
+
+    public static long rook(int sq, long occupied) {
+        return ROOK_TABLE[ROOK_OFFSET[sq] + (int) (((occupied & ROOK_MASK[sq]) * ROOK_MAGIC[sq]) >>> ROOK_SHIFT[sq])];
+    }
+
+    public static long queen(int sq, long occupied) {
+        return bishop(sq, occupied) | rook(sq, occupied);
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.board;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads and writes positions in Forsyth-Edwards Notation.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class Fen {
+
+    public static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final String PIECES = "PNBRQKpnbrqk";
+    private static final String CASTLING = "KQkq";
+    /**
+     * The largest halfmove clock {@link Position}'s undo stack can restore.
+     */
+    private static final int MAX_HALFMOVE_CLOCK = 0xFFFF;
+
+    private Fen() {
+    }
+
+    /**
+     * Replaces the contents of {@code position} with the position described
+     * by {@code fen}. The halfmove clock and fullmove number may be omitted,
+     * and leading and trailing whitespace is ignored, as is an en passant
+     * square that no double pawn push could have left. Nothing is allocated
+     * unless the FEN is malformed, in which case {@code position} is left
+     * cleared or partly filled.
+     *
+     * @throws IllegalArgumentException if {@code fen} is malformed
+     */
+    public static void load(Position position, CharSequence fen) {
+        load(position, fen, null, 0, fen.length());
+    }
+
+    /**
+     * Reads a position from the ASCII text between the position and limit of
+     * {@code buffer}, stopping at the first line break, and advances the
+     * buffer past that line break. This lets a file of positions, one per
+     * line, be read straight out of a mapped or pooled buffer.
+     *
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    public static void load(Position position, ByteBuffer buffer) {
+        int start = buffer.position(), end = start, limit = buffer.limit();
+        while (end < limit && buffer.get(end) != '\n' && buffer.get(end) != '\r') {
+            end++;
+        }
+
+        int next = end;
+        if (next < limit && buffer.get(next) == '\r') {
+            next++;
+        }
+        if (next < limit && buffer.get(next) == '\n') {
+            next++;
+        }
+        buffer.position(next);
+
+        load(position, null, buffer, start, end);
+    }
+
+    /*
+     * Exactly one of chars and bytes is non-null; reading through charAt
+     * avoids wrapping a buffer in a CharSequence for every call.
+     */
+    private static void load(Position position, CharSequence chars, ByteBuffer bytes, int start, int end) {
+        while (start < end && isSpace(charAt(chars, bytes, start))) {
+            start++;
+        }
+        while (end > start && isSpace(charAt(chars, bytes, end - 1))) {
+            end--;
+        }
+
+        position.clear();
+
+        int i = start, rank = 7, file = 0;
+        for (; i < end; i++) {
+            char ch = charAt(chars, bytes, i);
+            if (isSpace(ch)) {
+                break;
+            } else if (ch == '/') {
+                if (file != 8 || rank == 0) {
+                    throw malformed("piece placement", chars, bytes, start, end);
+                }
+                rank--;
+                file = 0;
+            } else if (ch >= '1' && ch <= '8') {
+                file += ch - '0';
+                if (file > 8) {
+                    throw malformed("piece placement", chars, bytes, start, end);
+                }
+            } else {
+                int piece = PIECES.indexOf(ch);
+                if (piece == -1 || file > 7) {
+                    throw malformed("piece placement", chars, bytes, start, end);
+                }
+                position.put(piece, Position.square(file++, rank));
+            }
+        }
+        if (rank != 0 || file != 8) {
+            throw malformed("piece placement", chars, bytes, start, end);
+        }
+
+        i = skipSpace(chars, bytes, i, end);
+        char side = i < end ? charAt(chars, bytes, i++) : 0;
+        if (side == 'w') {
+            position.setSideToMove(Position.WHITE);
+        } else if (side == 'b') {
+            position.setSideToMove(Position.BLACK);
+        } else {
+            throw malformed("side to move", chars, bytes, start, end);
+        }
+        if (i < end && !isSpace(charAt(chars, bytes, i))) {
+            throw malformed("side to move", chars, bytes, start, end);
+        }
+
+        i = skipSpace(chars, bytes, i, end);
+        int castling = 0;
+        if (i < end && charAt(chars, bytes, i) == '-') {
+            i++;
+        } else {
+            int first = i;
+            for (; i < end && !isSpace(charAt(chars, bytes, i)); i++) {
+                int right = CASTLING.indexOf(charAt(chars, bytes, i));
+                if (right == -1) {
+                    throw malformed("castling rights", chars, bytes, start, end);
+                }
+                castling |= 1 << right;
+            }
+            if (i == first) {
+                throw malformed("castling rights", chars, bytes, start, end);
+            }
+        }
+        position.setCastlingRights(castling);
+
+        i = skipSpace(chars, bytes, i, end);
+        int ep = -1;
+        if (i < end && charAt(chars, bytes, i) == '-') {
+            i++;
+        } else if (i + 1 < end) {
+            char f = charAt(chars, bytes, i), r = charAt(chars, bytes, i + 1);
+            if (f < 'a' || f > 'h' || r < '1' || r > '8') {
+                throw malformed("en passant square", chars, bytes, start, end);
+            }
+            ep = Position.square(f - 'a', r - '1');
+            i += 2;
+        } else {
+            throw malformed("en passant square", chars, bytes, start, end);
+        }
+        if (i < end && !isSpace(charAt(chars, bytes, i))) {
+            throw malformed("en passant square", chars, bytes, start, end);
+        }
+        position.setEnPassantSquare(ep != -1 && isDoublePushTarget(position, ep) ? ep : -1);
+
+        i = skipSpace(chars, bytes, i, end);
+        if (i == end) {
+            return;
+        }
+
+        int halfmove = 0, fullmove = 0;
+        for (; i < end && !isSpace(charAt(chars, bytes, i)); i++) {
+            halfmove = digit(halfmove, charAt(chars, bytes, i), chars, bytes, start, end);
+        }
+        if (halfmove > MAX_HALFMOVE_CLOCK) {
+            throw malformed("halfmove clock", chars, bytes, start, end);
+        }
+        position.setHalfmoveClock(halfmove);
+
+        i = skipSpace(chars, bytes, i, end);
+        if (i == end) {
+            return;
+        }
+        for (; i < end; i++) {
+            fullmove = digit(fullmove, charAt(chars, bytes, i), chars, bytes, start, end);
+        }
+        position.setFullmoveNumber(fullmove);
+    }
+
+    /**
+     * @return whether an enemy pawn could just have double pushed over
+     * {@code ep}, which must be empty, from a square that is now empty
+     */
+    private static boolean isDoublePushTarget(Position position, int ep) {
+        int them = position.sideToMove() ^ 1;
+        int rank = them == Position.WHITE ? 2 : 5, forward = them == Position.WHITE ? 8 : -8;
+        return Position.rankOf(ep) == rank
+                && position.pieceAt(ep) == Position.EMPTY
+                && position.pieceAt(ep - forward) == Position.EMPTY
+                && (position.pieces(them, Position.PAWN) & 1L << (ep + forward)) != 0;
+    }
+
+    private static char charAt(CharSequence chars, ByteBuffer bytes, int i) {
+        return chars != null ? chars.charAt(i) : (char) (bytes.get(i) & 0xFF);
+    }
+
+    private static boolean isSpace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r';
+    }
+
+    private static int skipSpace(CharSequence chars, ByteBuffer bytes, int i, int end) {
+        while (i < end && isSpace(charAt(chars, bytes, i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int digit(int value, char ch, CharSequence chars, ByteBuffer bytes, int start, int end) {
+        if (ch < '0' || ch > '9' || value > 100000) {
+            throw malformed("move counters", chars, bytes, start, end);
+        }
+        return value * 10 + ch - '0';
+    }
+
+    private static IllegalArgumentException malformed(String field, CharSequence chars, ByteBuffer bytes, int start, int end) {
+        StringBuilder fen = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            fen.append(charAt(chars, bytes, i));
+        }
+        return new IllegalArgumentException("Bad " + field + " in FEN: " + fen);
+    }
+
+    public static int parseSquare(String name) {
+        if (name.length() != 2 || name.charAt(0) < 'a' || name.charAt(0) > 'h'
+                || name.charAt(1) < '1' || name.charAt(1) > '8') {
+            throw new IllegalArgumentException("Bad square: " + name);
+        }
+        return Position.square(name.charAt(0) - 'a', name.charAt(1) - '1');
+    }
+
+    public static String toString(Position position) {
+        return append(new StringBuilder(90), position).toString();
+    }
+
+    /**
+     * Appends the FEN of {@code position} to {@code sb} without allocating
+     * anything beyond growing {@code sb}.
+     *
+     * @return {@code sb}
+     */
+    public static StringBuilder append(StringBuilder sb, Position position) {
+        for (int rank = 7; rank >= 0; rank--) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                int piece = position.pieceAt(Position.square(file, rank));
+                if (piece == Position.EMPTY) {
+                    empty++;
+                } else {
+                    if (empty != 0) {
+                        sb.append(empty);
+                        empty = 0;
+                    }
+                    sb.append(PIECES.charAt(piece));
+                }
+            }
+            if (empty != 0) {
+                sb.append(empty);
+            }
+            if (rank != 0) {
+                sb.append('/');
+            }
+        }
+
+        sb.append(position.sideToMove() == Position.WHITE ? " w " : " b ");
+
+        if (position.castlingRights() == 0) {
+            sb.append('-');
+        } else {
+            for (int i = 0; i < 4; i++) {
+                if ((position.castlingRights() & (1 << i)) != 0) {
+                    sb.append(CASTLING.charAt(i));
+                }
+            }
+        }
+
+        sb.append(' ');
+        if (position.enPassantSquare() == -1) {
+            sb.append('-');
+        } else {
+            sb.append((char) ('a' + Position.fileOf(position.enPassantSquare())))
+                    .append((char) ('1' + Position.rankOf(position.enPassantSquare())));
+        }
+        sb.append(' ').append(position.halfmoveClock()).append(' ').append(position.fullmoveNumber());
+
+        return sb;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.board;
+
+/**
+ * The state of a game as adjudicated by {@link Position#gameResult()}.
+ * A checkmate is always a loss for the side to move.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public enum GameResult {
+
+    ONGOING("The game is in progress"),
+    CHECKMATE("Checkmate"),
+    STALEMATE("Stalemate"),
+    INSUFFICIENT_MATERIAL("Insufficient material"),
+    THREEFOLD_REPETITION("Threefold repetition"),
+    FIFTY_MOVE_RULE("Fifty-move rule");
+    private final String description;
+
+    private GameResult(String description) {
+        this.description = description;
+    }
+
+    public boolean isOver() {
+        return this != ONGOING;
+    }
+
+    public boolean isDraw() {
+        return this != ONGOING && this != CHECKMATE;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
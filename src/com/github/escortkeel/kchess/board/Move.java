@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.board;
+
+/**
+ * Moves are packed into an {@code int}: bits 0-5 hold the origin square,
+ * bits 6-11 the destination, bits 12-14 the promotion piece type (zero if
+ * none) and the remaining bits the {@code CAPTURE}..{@code CASTLE} flags.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class Move {
+
+    public static final int NONE = 0;
+    public static final int CAPTURE = 1 << 15;
+    public static final int DOUBLE_PUSH = 1 << 16;
+    public static final int EN_PASSANT = 1 << 17;
+    public static final int CASTLE = 1 << 18;
+    private static final String FILES = "abcdefgh";
+    private static final String PROMOTIONS = " nbrq";
+
+    private Move() {
+    }
+
+    public static int of(int from, int to, int promotion, int flags) {
+        return from | (to << 6) | (promotion << 12) | flags;
+    }
+
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    /**
+     * @return the piece type promoted to, or zero if this is not a promotion
+     */
+    public static int promotion(int move) {
+        return (move >>> 12) & 7;
+    }
+
+    public static boolean isCapture(int move) {
+        return (move & CAPTURE) != 0;
+    }
+
+    public static boolean isPromotion(int move) {
+        return promotion(move) != 0;
+    }
+
+    public static boolean isDoublePush(int move) {
+        return (move & DOUBLE_PUSH) != 0;
+    }
+
+    public static boolean isEnPassant(int move) {
+        return (move & EN_PASSANT) != 0;
+    }
+
+    public static boolean isCastle(int move) {
+        return (move & CASTLE) != 0;
+    }
+
+    public static String squareName(int sq) {
+        return FILES.charAt(Position.fileOf(sq)) + Integer.toString(Position.rankOf(sq) + 1);
+    }
+
+    /**
+     * Parses a move in coordinate notation, e.g. "e2e4" or "e7e8q", and
+     * validates it for the side to move.
+     *
+     * @return the legal move, or {@link #NONE} if {@code s} is malformed or
+     * names an illegal move
+     */
+    public static int parse(Position position, CharSequence s) {
+        if (s.length() != 4 && s.length() != 5) {
+            return NONE;
+        }
+
+        int from = parseSquare(s.charAt(0), s.charAt(1)), to = parseSquare(s.charAt(2), s.charAt(3));
+        int promotion = s.length() == 5 ? PROMOTIONS.indexOf(Character.toLowerCase(s.charAt(4))) : 0;
+        if (from == -1 || to == -1 || promotion <= 0 && s.length() == 5) {
+            return NONE;
+        }
+        return MoveGenerator.legalMove(position, from, to, promotion);
+    }
+
+    private static int parseSquare(char file, char rank) {
+        if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+            return -1;
+        }
+        return Position.square(file - 'a', rank - '1');
+    }
+
+    /**
+     * @return the move in coordinate notation, e.g. "e2e4" or "e7e8q"
+     */
+    public static String toString(int move) {
+        String s = squareName(from(move)) + squareName(to(move));
+        return isPromotion(move) ? s + PROMOTIONS.charAt(promotion(move)) : s;
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.board;
+
+import static com.github.escortkeel.kchess.board.Position.BISHOP;
+import static com.github.escortkeel.kchess.board.Position.KING;
+import static com.github.escortkeel.kchess.board.Position.KNIGHT;
+import static com.github.escortkeel.kchess.board.Position.PAWN;
+import static com.github.escortkeel.kchess.board.Position.QUEEN;
+import static com.github.escortkeel.kchess.board.Position.ROOK;
+import static com.github.escortkeel.kchess.board.Position.WHITE;
+
+/**
+ * Generates the legal moves of a {@link Position} into a caller-owned
+ * buffer. No objects are allocated per call. Captures and promotions can be
+ * generated apart from the remaining quiet moves, so that a search which
+ * is cut off by a capture never generates the quiet moves at all.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class MoveGenerator {
+
+    /**
+     * An upper bound on the number of legal moves in any position, suitable
+     * as a buffer size.
+     */
+    public static final int MAX_MOVES = 256;
+    private static final long RANK_1 = 0xFFL;
+    private static final long RANK_8 = 0xFFL << 56;
+    private static final int CAPTURES = 1;
+    private static final int QUIETS = 2;
+
+    private MoveGenerator() {
+    }
+
+    /**
+     * Writes every legal move for the side to move into {@code buffer}.
+     *
+     * @return the number of moves written
+     */
+    public static int generateMoves(Position position, int[] buffer) {
+        return generate(position, buffer, CAPTURES | QUIETS);
+    }
+
+    /**
+     * Writes every legal capture and promotion for the side to move into
+     * {@code buffer}.
+     *
+     * @return the number of moves written
+     */
+    public static int generateCaptures(Position position, int[] buffer) {
+        return generate(position, buffer, CAPTURES);
+    }
+
+    /**
+     * Writes every legal move that neither captures nor promotes, castling
+     * included, for the side to move into {@code buffer}.
+     *
+     * @return the number of moves written
+     */
+    public static int generateQuiets(Position position, int[] buffer) {
+        return generate(position, buffer, QUIETS);
+    }
+
+    private static int generate(Position position, int[] buffer, int kinds) {
+        int us = position.sideToMove(), them = us ^ 1;
+        long enemy = position.colour(them), occupied = position.occupied();
+        long targets = ((kinds & CAPTURES) != 0 ? enemy : 0) | ((kinds & QUIETS) != 0 ? ~occupied : 0);
+        int count = 0;
+
+        count = generatePawnMoves(position, buffer, count, us, kinds);
+
+        long bb = position.pieces(us, KNIGHT);
+        while (bb != 0) {
+            int from = Long.numberOfTrailingZeros(bb);
+            count = addMoves(position, buffer, count, from, Attacks.knight(from) & targets, enemy);
+            bb &= bb - 1;
+        }
+
+        bb = position.pieces(us, BISHOP);
+        while (bb != 0) {
+            int from = Long.numberOfTrailingZeros(bb);
+            count = addMoves(position, buffer, count, from, Attacks.bishop(from, occupied) & targets, enemy);
+            bb &= bb - 1;
+        }
+
+        bb = position.pieces(us, ROOK);
+        while (bb != 0) {
+            int from = Long.numberOfTrailingZeros(bb);
+            count = addMoves(position, buffer, count, from, Attacks.rook(from, occupied) & targets, enemy);
+            bb &= bb - 1;
+        }
+
+        bb = position.pieces(us, QUEEN);
+        while (bb != 0) {
+            int from = Long.numberOfTrailingZeros(bb);
+            count = addMoves(position, buffer, count, from, Attacks.queen(from, occupied) & targets, enemy);
+            bb &= bb - 1;
+        }
+
+        bb = position.pieces(us, KING);
+        if (bb != 0) {
+            int from = Long.numberOfTrailingZeros(bb);
+            count = addMoves(position, buffer, count, from, Attacks.king(from) & targets, enemy);
+
+            long castles = (kinds & QUIETS) != 0 ? position.targets(from) & ~Attacks.king(from) : 0;
+            while (castles != 0) {
+                buffer[count++] = Move.of(from, Long.numberOfTrailingZeros(castles), 0, Move.CASTLE);
+                castles &= castles - 1;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Validates a move given by its squares, for the side to move, filling in
+     * the capture, double push, en passant and castling flags. A promotion
+     * must name the piece type to promote to; {@code promotion} is ignored
+     * for any other move. Nothing is allocated and no state is kept, so this
+     * may be called from any number of threads on distinct positions.
+     *
+     * @return the legal move, or {@link Move#NONE} if there is none
+     */
+    public static int legalMove(Position position, int from, int to, int promotion) {
+        if (from < 0 || from >= 64 || to < 0 || to >= 64) {
+            return Move.NONE;
+        }
+
+        int piece = position.pieceAt(from), us = position.sideToMove();
+        if (piece == Position.EMPTY || Position.colourOf(piece) != us || (position.targets(from) & (1L << to)) == 0) {
+            return Move.NONE;
+        }
+
+        int flags = position.pieceAt(to) != Position.EMPTY ? Move.CAPTURE : 0;
+        switch (Position.typeOf(piece)) {
+            case PAWN:
+                if (to == position.enPassantSquare() && Position.fileOf(from) != Position.fileOf(to)) {
+                    flags |= Move.CAPTURE | Move.EN_PASSANT;
+                } else if (Math.abs(to - from) == 16) {
+                    flags |= Move.DOUBLE_PUSH;
+                }
+
+                if (((us == WHITE ? RANK_8 : RANK_1) & (1L << to)) == 0) {
+                    promotion = 0;
+                } else if (promotion < KNIGHT || promotion > QUEEN) {
+                    return Move.NONE;
+                }
+                break;
+            case KING:
+                if (Math.abs(to - from) == 2) {
+                    flags |= Move.CASTLE;
+                }
+                promotion = 0;
+                break;
+            default:
+                promotion = 0;
+        }
+
+        int move = Move.of(from, to, promotion, flags);
+        return isLegal(position, move) ? move : Move.NONE;
+    }
+
+    /**
+     * Determines whether the side to move has any legal move, stopping at the
+     * first one found. King moves are tried first, since they are the only
+     * candidates when in double check and the likeliest to be refuted.
+     */
+    public static boolean hasLegalMove(Position position) {
+        int us = position.sideToMove();
+        int king = position.kingSquare(us);
+        if (king != 64 && anyLegal(position, king, position.targets(king))) {
+            return true;
+        }
+
+        long bb = position.colour(us) & ~position.pieces(us, KING);
+        while (bb != 0) {
+            int from = Long.numberOfTrailingZeros(bb);
+            if (anyLegal(position, from, position.targets(from))) {
+                return true;
+            }
+            bb &= bb - 1;
+        }
+        return false;
+    }
+
+    private static boolean anyLegal(Position position, int from, long targets) {
+        int ep = position.pieceAt(from) == Position.piece(position.sideToMove(), PAWN) ? position.enPassantSquare() : -1;
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            if (isLegal(position, Move.of(from, to, 0, to == ep ? Move.EN_PASSANT : 0))) {
+                return true;
+            }
+            targets &= targets - 1;
+        }
+        return false;
+    }
+
+    private static int addMoves(Position position, int[] buffer, int count, int from, long targets, long enemy) {
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            int move = Move.of(from, to, 0, (enemy & (1L << to)) != 0 ? Move.CAPTURE : 0);
+            if (isLegal(position, move)) {
+                buffer[count++] = move;
+            }
+            targets &= targets - 1;
+        }
+        return count;
+    }
+
+    private static int generatePawnMoves(Position position, int[] buffer, int count, int us, int kinds) {
+        long pawns = position.pieces(us, PAWN);
+        long empty = ~position.occupied(), enemy = position.colour(us ^ 1);
+        long lastRank = us == WHITE ? RANK_8 : RANK_1;
+        int forward = us == WHITE ? 8 : -8;
+
+        long single = (us == WHITE ? pawns << 8 : pawns >>> 8) & empty;
+        long twice = (us == WHITE ? (single & (RANK_1 << 16)) << 8 : (single & (RANK_8 >>> 16)) >>> 8) & empty;
+        if ((kinds & CAPTURES) == 0) {
+            single &= ~lastRank;
+            pawns = 0;
+        }
+        if ((kinds & QUIETS) == 0) {
+            single &= lastRank;
+            twice = 0;
+        }
+
+        long bb = single;
+        while (bb != 0) {
+            int to = Long.numberOfTrailingZeros(bb);
+            count = addPawnMove(position, buffer, count, Move.of(to - forward, to, 0, 0), lastRank);
+            bb &= bb - 1;
+        }
+
+        bb = twice;
+        while (bb != 0) {
+            int to = Long.numberOfTrailingZeros(bb);
+            int move = Move.of(to - 2 * forward, to, 0, Move.DOUBLE_PUSH);
+            if (isLegal(position, move)) {
+                buffer[count++] = move;
+            }
+            bb &= bb - 1;
+        }
+
+        int ep = position.enPassantSquare();
+        bb = pawns;
+        while (bb != 0) {
+            int from = Long.numberOfTrailingZeros(bb);
+            long captures = Attacks.pawn(us, from) & enemy;
+            while (captures != 0) {
+                int to = Long.numberOfTrailingZeros(captures);
+                count = addPawnMove(position, buffer, count, Move.of(from, to, 0, Move.CAPTURE), lastRank);
+                captures &= captures - 1;
+            }
+
+            if (ep != -1 && (Attacks.pawn(us, from) & (1L << ep)) != 0) {
+                int move = Move.of(from, ep, 0, Move.CAPTURE | Move.EN_PASSANT);
+                if (isLegal(position, move)) {
+                    buffer[count++] = move;
+                }
+            }
+            bb &= bb - 1;
+        }
+
+        return count;
+    }
+
+    private static int addPawnMove(Position position, int[] buffer, int count, int move, long lastRank) {
+        if (!isLegal(position, move)) {
+            return count;
+        }
+
+        if ((lastRank & (1L << Move.to(move))) != 0) {
+            for (int type = QUEEN; type >= KNIGHT; type--) {
+                buffer[count++] = move | (type << 12);
+            }
+        } else {
+            buffer[count++] = move;
+        }
+
+        return count;
+    }
+
+    /**
+     * Determines whether a pseudo-legal move leaves the mover's king out of
+     * check, by testing for attackers against the occupancy after the move.
+     */
+    public static boolean isLegal(Position position, int move) {
+        int from = Move.from(move), to = Move.to(move);
+        int us = Position.colourOf(position.pieceAt(from)), them = us ^ 1;
+
+        long captured = 1L << to;
+        long occupied = (position.occupied() ^ (1L << from)) | captured;
+        if (Move.isEnPassant(move)) {
+            captured = 1L << (us == WHITE ? to - 8 : to + 8);
+            occupied ^= captured;
+        }
+
+        int king = position.pieceAt(from) == Position.piece(us, KING) ? to : position.kingSquare(us);
+        if (king == 64) {
+            return true;
+        }
+
+        long remaining = ~captured;
+        long diagonal = (position.pieces(them, BISHOP) | position.pieces(them, QUEEN)) & remaining;
+        long straight = (position.pieces(them, ROOK) | position.pieces(them, QUEEN)) & remaining;
+
+        return ((Attacks.pawn(us, king) & position.pieces(them, PAWN) & remaining)
+                | (Attacks.knight(king) & position.pieces(them, KNIGHT) & remaining)
+                | (Attacks.king(king) & position.pieces(them, KING))
+                | (Attacks.bishop(king, occupied) & diagonal)
+                | (Attacks.rook(king, occupied) & straight)) == 0;
+    }
+}
@@ -0,0 +1,650 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.board;
+
+/**
+ * A chess position stored as twelve piece bitboards plus side to move,
+ * castling rights and en-passant square. Squares are numbered a1 = 0 to
+ * h8 = 63; piece codes are {@code colour * 6 + type}, with the type order
+ * matching {@link com.github.escortkeel.kchess.Piece}.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class Position {
+
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+    public static final int PAWN = 0;
+    public static final int KNIGHT = 1;
+    public static final int BISHOP = 2;
+    public static final int ROOK = 3;
+    public static final int QUEEN = 4;
+    public static final int KING = 5;
+    public static final int EMPTY = -1;
+    public static final int WHITE_KINGSIDE = 1;
+    public static final int WHITE_QUEENSIDE = 2;
+    public static final int BLACK_KINGSIDE = 4;
+    public static final int BLACK_QUEENSIDE = 8;
+    /**
+     * The number of moves which can be made, and taken back, in a row.
+     */
+    public static final int MAX_PLY = 2048;
+    private static final int[] CASTLING_MASK = new int[64];
+    private static final long DARK_SQUARES = 0xAA55AA55AA55AA55L;
+    private final long[] bitboards = new long[12];
+    private final long[] colours = new long[2];
+    private final byte[] board = new byte[64];
+    private final int[] kings = new int[2];
+    private final int[] undoMoves = new int[MAX_PLY];
+    private final int[] undoStates = new int[MAX_PLY];
+    private final long[] undoHashes = new long[MAX_PLY];
+    private int ply;
+    private long occupied;
+    private long hash;
+    private int score;
+    private int phase;
+    private int sideToMove;
+    private int castling;
+    private int epSquare;
+    private int halfmoveClock;
+    private int fullmoveNumber;
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            CASTLING_MASK[sq] = WHITE_KINGSIDE | WHITE_QUEENSIDE | BLACK_KINGSIDE | BLACK_QUEENSIDE;
+        }
+        CASTLING_MASK[0] &= ~WHITE_QUEENSIDE;
+        CASTLING_MASK[4] &= ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+        CASTLING_MASK[7] &= ~WHITE_KINGSIDE;
+        CASTLING_MASK[56] &= ~BLACK_QUEENSIDE;
+        CASTLING_MASK[60] &= ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+        CASTLING_MASK[63] &= ~BLACK_KINGSIDE;
+    }
+
+    public Position() {
+        clear();
+    }
+
+    public static int piece(int colour, int type) {
+        return colour * 6 + type;
+    }
+
+    public static int colourOf(int piece) {
+        return piece < 6 ? WHITE : BLACK;
+    }
+
+    public static int typeOf(int piece) {
+        return piece < 6 ? piece : piece - 6;
+    }
+
+    public static int square(int file, int rank) {
+        return rank * 8 + file;
+    }
+
+    public static int fileOf(int sq) {
+        return sq & 7;
+    }
+
+    public static int rankOf(int sq) {
+        return sq >>> 3;
+    }
+
+    public void clear() {
+        for (int i = 0; i < 12; i++) {
+            bitboards[i] = 0;
+        }
+        colours[WHITE] = colours[BLACK] = occupied = 0;
+        kings[WHITE] = kings[BLACK] = 64;
+        for (int sq = 0; sq < 64; sq++) {
+            board[sq] = EMPTY;
+        }
+
+        sideToMove = WHITE;
+        castling = 0;
+        epSquare = -1;
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
+        ply = 0;
+        hash = 0;
+        score = phase = 0;
+    }
+
+    public void setStartPosition() {
+        clear();
+
+        int[] backRank = {ROOK, KNIGHT, BISHOP, QUEEN, KING, BISHOP, KNIGHT, ROOK};
+        for (int file = 0; file < 8; file++) {
+            put(piece(WHITE, backRank[file]), square(file, 0));
+            put(piece(WHITE, PAWN), square(file, 1));
+            put(piece(BLACK, PAWN), square(file, 6));
+            put(piece(BLACK, backRank[file]), square(file, 7));
+        }
+
+        setCastlingRights(WHITE_KINGSIDE | WHITE_QUEENSIDE | BLACK_KINGSIDE | BLACK_QUEENSIDE);
+    }
+
+    public void copyFrom(Position other) {
+        System.arraycopy(other.bitboards, 0, bitboards, 0, 12);
+        System.arraycopy(other.colours, 0, colours, 0, 2);
+        System.arraycopy(other.board, 0, board, 0, 64);
+        kings[WHITE] = other.kings[WHITE];
+        kings[BLACK] = other.kings[BLACK];
+        occupied = other.occupied;
+        hash = other.hash;
+        score = other.score;
+        phase = other.phase;
+        sideToMove = other.sideToMove;
+        castling = other.castling;
+        epSquare = other.epSquare;
+        halfmoveClock = other.halfmoveClock;
+        fullmoveNumber = other.fullmoveNumber;
+        ply = other.ply;
+        System.arraycopy(other.undoMoves, 0, undoMoves, 0, ply);
+        System.arraycopy(other.undoStates, 0, undoStates, 0, ply);
+        System.arraycopy(other.undoHashes, 0, undoHashes, 0, ply);
+    }
+
+    /**
+     * Plays a legal move, as produced by {@link MoveGenerator}, for the side
+     * to move. The state needed to take it back is pushed onto a fixed-size
+     * undo stack of {@link #MAX_PLY} entries.
+     */
+    public void makeMove(int move) {
+        int from = Move.from(move), to = Move.to(move);
+        int piece = board[from], us = colourOf(piece);
+
+        undoHashes[ply] = hash;
+        hash ^= enPassantKey();
+
+        int captured;
+        if (Move.isEnPassant(move)) {
+            captured = remove(us == WHITE ? to - 8 : to + 8);
+        } else {
+            captured = remove(to);
+        }
+
+        undoMoves[ply] = move;
+        undoStates[ply++] = (captured + 1) | (castling << 4) | ((epSquare + 1) << 8) | (halfmoveClock << 15);
+
+        remove(from);
+        put(Move.isPromotion(move) ? piece(us, Move.promotion(move)) : piece, to);
+
+        if (Move.isCastle(move)) {
+            if (to > from) {
+                put(remove(to + 1), to - 1);
+            } else {
+                put(remove(to - 2), to + 1);
+            }
+        }
+
+        hash ^= Zobrist.castling(castling) ^ Zobrist.blackToMove();
+        castling &= CASTLING_MASK[from] & CASTLING_MASK[to];
+        epSquare = Move.isDoublePush(move) ? (from + to) >>> 1 : -1;
+        hash ^= Zobrist.castling(castling);
+        halfmoveClock = typeOf(piece) == PAWN || captured != EMPTY ? 0 : halfmoveClock + 1;
+        if (us == BLACK) {
+            fullmoveNumber++;
+        }
+        sideToMove = us ^ 1;
+        hash ^= enPassantKey();
+    }
+
+    /**
+     * Takes back the last move made with {@link #makeMove}.
+     */
+    public void unmakeMove() {
+        int move = undoMoves[--ply], state = undoStates[ply];
+        int from = Move.from(move), to = Move.to(move);
+        int us = sideToMove ^ 1;
+
+        int piece = remove(to);
+        put(Move.isPromotion(move) ? piece(us, PAWN) : piece, from);
+
+        if (Move.isCastle(move)) {
+            if (to > from) {
+                put(remove(to - 1), to + 1);
+            } else {
+                put(remove(to + 1), to - 2);
+            }
+        }
+
+        int captured = (state & 15) - 1;
+        if (captured != EMPTY) {
+            put(captured, Move.isEnPassant(move) ? (us == WHITE ? to - 8 : to + 8) : to);
+        }
+
+        castling = (state >>> 4) & 15;
+        epSquare = ((state >>> 8) & 127) - 1;
+        halfmoveClock = state >>> 15;
+        if (us == BLACK) {
+            fullmoveNumber--;
+        }
+        sideToMove = us;
+        hash = undoHashes[ply];
+    }
+
+    /**
+     * Passes the move to the other side, for null-move pruning in search.
+     * It must be taken back with {@link #unmakeNullMove}.
+     */
+    public void makeNullMove() {
+        undoMoves[ply] = Move.NONE;
+        undoHashes[ply] = hash;
+        undoStates[ply++] = (castling << 4) | ((epSquare + 1) << 8) | (halfmoveClock << 15);
+
+        hash ^= enPassantKey() ^ Zobrist.blackToMove();
+        epSquare = -1;
+        halfmoveClock++;
+        sideToMove ^= 1;
+    }
+
+    public void unmakeNullMove() {
+        int state = undoStates[--ply];
+
+        epSquare = ((state >>> 8) & 127) - 1;
+        halfmoveClock = state >>> 15;
+        sideToMove ^= 1;
+        hash = undoHashes[ply];
+    }
+
+    /**
+     * @return the number of moves which can currently be taken back
+     */
+    public int ply() {
+        return ply;
+    }
+
+    /**
+     * @return the move made {@code back} plies ago, starting from 1
+     */
+    public int lastMove(int back) {
+        return undoMoves[ply - back];
+    }
+
+    public void put(int piece, int sq) {
+        long bit = 1L << sq;
+        bitboards[piece] |= bit;
+        colours[colourOf(piece)] |= bit;
+        occupied |= bit;
+        board[sq] = (byte) piece;
+        hash ^= Zobrist.piece(piece, sq);
+        score += PieceSquare.score(piece, sq);
+        phase += PieceSquare.PHASE[typeOf(piece)];
+        if (typeOf(piece) == KING) {
+            kings[colourOf(piece)] = sq;
+        }
+    }
+
+    /**
+     * @return the piece removed from {@code sq}, or {@link #EMPTY}
+     */
+    public int remove(int sq) {
+        int piece = board[sq];
+        if (piece != EMPTY) {
+            long bit = ~(1L << sq);
+            bitboards[piece] &= bit;
+            colours[colourOf(piece)] &= bit;
+            occupied &= bit;
+            board[sq] = EMPTY;
+            hash ^= Zobrist.piece(piece, sq);
+            score -= PieceSquare.score(piece, sq);
+            phase -= PieceSquare.PHASE[typeOf(piece)];
+            if (typeOf(piece) == KING) {
+                kings[colourOf(piece)] = 64;
+            }
+        }
+        return piece;
+    }
+
+    public int pieceAt(int sq) {
+        return board[sq];
+    }
+
+    public long bitboard(int piece) {
+        return bitboards[piece];
+    }
+
+    public long pieces(int colour, int type) {
+        return bitboards[colour * 6 + type];
+    }
+
+    public long colour(int colour) {
+        return colours[colour];
+    }
+
+    public long occupied() {
+        return occupied;
+    }
+
+    /**
+     * @return the Zobrist key of this position, covering piece placement,
+     * side to move, castling rights and, if a pawn of the side to move
+     * stands beside the pawn that just double pushed, the en-passant file
+     */
+    public long hash() {
+        return hash;
+    }
+
+    /**
+     * @return the key for the en-passant square if a pawn of the side to
+     * move could capture onto it, otherwise zero, so that a double push
+     * nothing can take hashes like any other move
+     */
+    private long enPassantKey() {
+        if (epSquare == -1 || (Attacks.pawn(sideToMove ^ 1, epSquare) & bitboards[piece(sideToMove, PAWN)]) == 0) {
+            return 0;
+        }
+        return Zobrist.enPassant(epSquare);
+    }
+
+    /**
+     * @return the material and piece-square total of the pieces on the
+     * board for the middlegame, from white's point of view
+     */
+    public int midgameScore() {
+        return PieceSquare.midgame(score);
+    }
+
+    /**
+     * @return as {@link #midgameScore}, for the endgame
+     */
+    public int endgameScore() {
+        return PieceSquare.endgame(score);
+    }
+
+    /**
+     * @return how far from the endgame this position is, between zero and
+     * {@link PieceSquare#MAX_PHASE} unless there has been a promotion
+     */
+    public int phase() {
+        return phase;
+    }
+
+    /**
+     * @return the side to move
+     */
+    public int sideToMove() {
+        return sideToMove;
+    }
+
+    /**
+     * @param sideToMove the side to move to set
+     */
+    public void setSideToMove(int sideToMove) {
+        if (this.sideToMove != sideToMove) {
+            hash ^= enPassantKey() ^ Zobrist.blackToMove();
+            this.sideToMove = sideToMove;
+            hash ^= enPassantKey();
+        }
+    }
+
+    /**
+     * @return the castling rights, a combination of the
+     * {@code WHITE_KINGSIDE}..{@code BLACK_QUEENSIDE} bits
+     */
+    public int castlingRights() {
+        return castling;
+    }
+
+    /**
+     * @param castling the castling rights to set
+     */
+    public void setCastlingRights(int castling) {
+        hash ^= Zobrist.castling(this.castling) ^ Zobrist.castling(castling);
+        this.castling = castling;
+    }
+
+    /**
+     * @return the en-passant target square, or -1
+     */
+    public int enPassantSquare() {
+        return epSquare;
+    }
+
+    /**
+     * Sets the en-passant target square. Whether it is hashed depends on the
+     * pawns beside it, so it should be set after the pieces are placed.
+     *
+     * @param epSquare the en-passant target square to set, or -1
+     */
+    public void setEnPassantSquare(int epSquare) {
+        hash ^= enPassantKey();
+        this.epSquare = epSquare;
+        hash ^= enPassantKey();
+    }
+
+    /**
+     * @return the halfmove clock
+     */
+    public int halfmoveClock() {
+        return halfmoveClock;
+    }
+
+    /**
+     * @param halfmoveClock the halfmove clock to set
+     */
+    public void setHalfmoveClock(int halfmoveClock) {
+        this.halfmoveClock = halfmoveClock;
+    }
+
+    /**
+     * @return the fullmove number
+     */
+    public int fullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    /**
+     * @param fullmoveNumber the fullmove number to set
+     */
+    public void setFullmoveNumber(int fullmoveNumber) {
+        this.fullmoveNumber = fullmoveNumber;
+    }
+
+    /**
+     * @return the square of the given side's king, or 64 if it has none
+     */
+    public int kingSquare(int colour) {
+        return kings[colour];
+    }
+
+    /**
+     * @return every piece of either colour attacking {@code sq}, given the
+     * occupancy {@code occ}
+     */
+    public long attackersTo(int sq, long occ) {
+        return (Attacks.pawn(BLACK, sq) & bitboards[PAWN])
+                | (Attacks.pawn(WHITE, sq) & bitboards[6 + PAWN])
+                | (Attacks.knight(sq) & (bitboards[KNIGHT] | bitboards[6 + KNIGHT]))
+                | (Attacks.king(sq) & (bitboards[KING] | bitboards[6 + KING]))
+                | (Attacks.bishop(sq, occ) & (bitboards[BISHOP] | bitboards[6 + BISHOP] | bitboards[QUEEN] | bitboards[6 + QUEEN]))
+                | (Attacks.rook(sq, occ) & (bitboards[ROOK] | bitboards[6 + ROOK] | bitboards[QUEEN] | bitboards[6 + QUEEN]));
+    }
+
+    public boolean isAttacked(int sq, int by) {
+        return (attackersTo(sq, occupied) & colours[by]) != 0;
+    }
+
+    public boolean inCheck() {
+        return checkers() != 0;
+    }
+
+    /**
+     * @return the enemy pieces giving check to the side to move
+     */
+    public long checkers() {
+        int king = kings[sideToMove];
+        return king == 64 ? 0 : attackersTo(king, occupied) & colours[sideToMove ^ 1];
+    }
+
+    /**
+     * Counts the earlier occurrences of the current position, looking back
+     * through the undo stack no further than the last irreversible move.
+     * Positions reached before the last {@link #clear} are not remembered.
+     */
+    public int repetitions() {
+        return repetitions(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return whether the current position has occurred before, which search
+     * scores as a draw
+     */
+    public boolean isRepetition() {
+        return repetitions(1) > 0;
+    }
+
+    /**
+     * Counts as {@link #repetitions()} does, but stops once {@code limit}
+     * earlier occurrences have been found.
+     */
+    private int repetitions(int limit) {
+        int count = 0;
+        for (int i = ply - 4, end = Math.max(0, ply - halfmoveClock); i >= end && count < limit; i -= 2) {
+            if (undoHashes[i] == hash) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return whether neither side can possibly deliver mate: bare kings, a
+     * single minor piece, or only bishops all on squares of one colour
+     */
+    public boolean isInsufficientMaterial() {
+        long heavy = bitboards[PAWN] | bitboards[6 + PAWN] | bitboards[ROOK] | bitboards[6 + ROOK]
+                | bitboards[QUEEN] | bitboards[6 + QUEEN];
+        if (heavy != 0) {
+            return false;
+        }
+
+        long knights = bitboards[KNIGHT] | bitboards[6 + KNIGHT];
+        long bishops = bitboards[BISHOP] | bitboards[6 + BISHOP];
+        if (Long.bitCount(knights | bishops) <= 1) {
+            return true;
+        }
+        return knights == 0 && ((bishops & DARK_SQUARES) == 0 || (bishops & ~DARK_SQUARES) == 0);
+    }
+
+    /**
+     * Adjudicates the position. Checkmate and stalemate take precedence over
+     * the draw rules, so a mate delivered on the hundredth halfmove stands.
+     */
+    public GameResult gameResult() {
+        if (!MoveGenerator.hasLegalMove(this)) {
+            return inCheck() ? GameResult.CHECKMATE : GameResult.STALEMATE;
+        }
+        if (isInsufficientMaterial()) {
+            return GameResult.INSUFFICIENT_MATERIAL;
+        }
+        if (repetitions(2) >= 2) {
+            return GameResult.THREEFOLD_REPETITION;
+        }
+        if (halfmoveClock >= 100) {
+            return GameResult.FIFTY_MOVE_RULE;
+        }
+        return GameResult.ONGOING;
+    }
+
+    /**
+     * Computes the pseudo-legal destinations of the piece on {@code from}:
+     * every square it may move to under the movement rules, including
+     * castling and en passant, without regard to whether its own king is left
+     * in check.
+     *
+     * @return a bitboard of destination squares, empty if {@code from} is
+     * empty
+     */
+    public long targets(int from) {
+        int piece = board[from];
+        if (piece == EMPTY) {
+            return 0;
+        }
+
+        int us = colourOf(piece);
+        long own = colours[us];
+        switch (typeOf(piece)) {
+            case PAWN:
+                return pawnTargets(from, us);
+            case KNIGHT:
+                return Attacks.knight(from) & ~own;
+            case BISHOP:
+                return Attacks.bishop(from, occupied) & ~own;
+            case ROOK:
+                return Attacks.rook(from, occupied) & ~own;
+            case QUEEN:
+                return Attacks.queen(from, occupied) & ~own;
+            default:
+                return (Attacks.king(from) & ~own) | castlingTargets(us);
+        }
+    }
+
+    private long pawnTargets(int from, int us) {
+        long targets = Attacks.pawn(us, from) & colours[us ^ 1];
+        if (epSquare != -1 && us == sideToMove) {
+            targets |= Attacks.pawn(us, from) & (1L << epSquare);
+        }
+
+        int push = us == WHITE ? from + 8 : from - 8;
+        if (push >= 0 && push < 64 && board[push] == EMPTY) {
+            targets |= 1L << push;
+
+            int startRank = us == WHITE ? 1 : 6;
+            int doublePush = us == WHITE ? push + 8 : push - 8;
+            if (rankOf(from) == startRank && board[doublePush] == EMPTY) {
+                targets |= 1L << doublePush;
+            }
+        }
+
+        return targets;
+    }
+
+    private long castlingTargets(int us) {
+        int home = us == WHITE ? 4 : 60;
+        int kingside = us == WHITE ? WHITE_KINGSIDE : BLACK_KINGSIDE;
+        int queenside = us == WHITE ? WHITE_QUEENSIDE : BLACK_QUEENSIDE;
+        if ((castling & (kingside | queenside)) == 0
+                || board[home] != piece(us, KING) || isAttacked(home, us ^ 1)) {
+            return 0;
+        }
+
+        long targets = 0;
+        if ((castling & kingside) != 0 && board[home + 3] == piece(us, ROOK)
+                && (occupied & (3L << (home + 1))) == 0
+                && !isAttacked(home + 1, us ^ 1) && !isAttacked(home + 2, us ^ 1)) {
+            targets |= 1L << (home + 2);
+        }
+
+        if ((castling & queenside) != 0 && board[home - 4] == piece(us, ROOK)
+                && (occupied & (7L << (home - 3))) == 0
+                && !isAttacked(home - 1, us ^ 1) && !isAttacked(home - 2, us ^ 1)) {
+            targets |= 1L << (home - 2);
+        }
+
+        return targets;
+    }
+}
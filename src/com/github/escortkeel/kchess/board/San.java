@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.board;
+
+/**
+ * Standard algebraic notation, as used in PGN: "e4", "Nbd7", "exd5",
+ * "O-O", "e8=Q+".
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class San {
+
+    private static final String PIECES = "PNBRQK";
+
+    private San() {
+    }
+
+    /**
+     * Formats a legal move of the side to move, with the minimum
+     * disambiguation and a check or mate suffix. The position is left as it
+     * was found.
+     */
+    public static String toString(Position position, int move) {
+        StringBuilder sb = new StringBuilder(8);
+        append(sb, position, move);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the SAN of a legal move of the side to move to {@code sb}.
+     */
+    public static void append(StringBuilder sb, Position position, int move) {
+        int from = Move.from(move), to = Move.to(move);
+        int type = Position.typeOf(position.pieceAt(from));
+
+        if (Move.isCastle(move)) {
+            sb.append(to > from ? "O-O" : "O-O-O");
+        } else {
+            if (type == Position.PAWN) {
+                if (Move.isCapture(move)) {
+                    sb.append((char) ('a' + Position.fileOf(from)));
+                }
+            } else {
+                sb.append(PIECES.charAt(type));
+                appendDisambiguation(sb, position, move, type);
+            }
+
+            if (Move.isCapture(move)) {
+                sb.append('x');
+            }
+            sb.append(Move.squareName(to));
+
+            if (Move.isPromotion(move)) {
+                sb.append('=').append(PIECES.charAt(Move.promotion(move)));
+            }
+        }
+
+        position.makeMove(move);
+        if (position.inCheck()) {
+            sb.append(MoveGenerator.hasLegalMove(position) ? '+' : '#');
+        }
+        position.unmakeMove();
+    }
+
+    /**
+     * Parses a move in SAN for the side to move. Check and mate suffixes and
+     * annotations such as "!?" are ignored, and castling may be written with
+     * zeros.
+     *
+     * @return the legal move, or {@link Move#NONE} if {@code san} is
+     * malformed, illegal or ambiguous
+     */
+    public static int parse(Position position, CharSequence san) {
+        int end = san.length();
+        while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) != -1) {
+            end--;
+        }
+        if (end < 2) {
+            return Move.NONE;
+        }
+
+        int us = position.sideToMove();
+        if (isCastle(san, end, 3) || isCastle(san, end, 5)) {
+            int king = position.kingSquare(us);
+            if (king == 64) {
+                return Move.NONE;
+            }
+            return MoveGenerator.legalMove(position, king, end == 3 ? king + 2 : king - 2, 0);
+        }
+
+        int start = 0, type = Position.PAWN;
+        int piece = PIECES.indexOf(san.charAt(0));
+        if (piece > 0) {
+            type = piece;
+            start = 1;
+        }
+
+        int promotion = 0;
+        if (end >= 2 && (piece = PIECES.indexOf(san.charAt(end - 1))) > 0) {
+            promotion = piece;
+            end -= san.charAt(end - 2) == '=' ? 2 : 1;
+        }
+        if (end - start < 2) {
+            return Move.NONE;
+        }
+
+        int to = square(san.charAt(end - 2), san.charAt(end - 1));
+        if (to == -1) {
+            return Move.NONE;
+        }
+
+        int file = -1, rank = -1;
+        for (int i = start; i < end - 2; i++) {
+            char ch = san.charAt(i);
+            if (ch >= 'a' && ch <= 'h') {
+                file = ch - 'a';
+            } else if (ch >= '1' && ch <= '8') {
+                rank = ch - '1';
+            } else if (ch != 'x' && ch != ':' && ch != '-') {
+                return Move.NONE;
+            }
+        }
+
+        int found = Move.NONE;
+        long candidates = position.pieces(us, type);
+        while (candidates != 0) {
+            int from = Long.numberOfTrailingZeros(candidates);
+            candidates &= candidates - 1;
+            if ((file != -1 && Position.fileOf(from) != file) || (rank != -1 && Position.rankOf(from) != rank)) {
+                continue;
+            }
+
+            int move = MoveGenerator.legalMove(position, from, to, promotion);
+            if (move != Move.NONE) {
+                if (found != Move.NONE) {
+                    return Move.NONE;
+                }
+                found = move;
+            }
+        }
+        return found;
+    }
+
+    private static boolean isCastle(CharSequence san, int end, int length) {
+        if (end != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char ch = san.charAt(i);
+            if (i % 2 == 1 ? ch != '-' : ch != 'O' && ch != '0') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int square(char file, char rank) {
+        if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+            return -1;
+        }
+        return Position.square(file - 'a', rank - '1');
+    }
+
+    private static void appendDisambiguation(StringBuilder sb, Position position, int move, int type) {
+        int from = Move.from(move), to = Move.to(move);
+
+        boolean ambiguous = false, sameFile = false, sameRank = false;
+        long others = position.pieces(position.sideToMove(), type) & ~(1L << from);
+        while (others != 0) {
+            int sq = Long.numberOfTrailingZeros(others);
+            if (MoveGenerator.legalMove(position, sq, to, 0) != Move.NONE) {
+                ambiguous = true;
+                sameFile |= Position.fileOf(sq) == Position.fileOf(from);
+                sameRank |= Position.rankOf(sq) == Position.rankOf(from);
+            }
+            others &= others - 1;
+        }
+
+        if (!ambiguous) {
+            return;
+        }
+        if (!sameFile) {
+            sb.append((char) ('a' + Position.fileOf(from)));
+        } else if (!sameRank) {
+            sb.append((char) ('1' + Position.rankOf(from)));
+        } else {
+            sb.append(Move.squareName(from));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.board;
+
+/**
+ * Random keys for Zobrist hashing of positions. The keys are generated from
+ * a fixed seed so that hashes are stable across runs.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class Zobrist {
+
+    private static final long[][] PIECES = new long[12][64];
+    private static final long[] CASTLING = new long[16];
+    private static final long[] EN_PASSANT = new long[8];
+    private static final long BLACK_TO_MOVE;
+
+    static {
+        long seed = 0x4B43686573734B4CL;
+        for (int piece = 0; piece < 12; piece++) {
+            for (int sq = 0; sq < 64; sq++) {
+                PIECES[piece][sq] = seed = next(seed);
+            }
+        }
+
+        long[] rights = new long[4];
+        for (int i = 0; i < 4; i++) {
+            rights[i] = seed = next(seed);
+        }
+        for (int castling = 0; castling < 16; castling++) {
+            for (int i = 0; i < 4; i++) {
+                if ((castling & (1 << i)) != 0) {
+                    CASTLING[castling] ^= rights[i];
+                }
+            }
+        }
+
+        for (int file = 0; file < 8; file++) {
+            EN_PASSANT[file] = seed = next(seed);
+        }
+
+        BLACK_TO_MOVE = next(seed);
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * Steps a SplitMix64 generator. The returned value is both the output
+     * and the next state, which is fine for a one-off table fill.
+     */
+    private static long next(long state) {
+        long z = state + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public static long piece(int piece, int sq) {
+        return PIECES[piece][sq];
+    }
+
+    public static long castling(int castling) {
+        return CASTLING[castling];
+    }
+
+    /**
+     * @return the key for an en-passant square, or zero if {@code sq} is -1
+     */
+    public static long enPassant(int sq) {
+        return sq == -1 ? 0 : EN_PASSANT[sq & 7];
+    }
+
+    public static long blackToMove() {
+        return BLACK_TO_MOVE;
+    }
+}
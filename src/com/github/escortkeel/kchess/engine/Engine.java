@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.engine;
+
+import com.github.escortkeel.kchess.board.Move;
+import com.github.escortkeel.kchess.board.Position;
+import com.github.escortkeel.kchess.tablebase.Tablebases;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A Lazy SMP search: the calling thread runs the main {@link Search} while
+ * helper threads search the same root at staggered depths, all sharing one
+ * {@link TranspositionTable}. The helpers mostly fill the table with
+ * results the main search can reuse, so only its answer is reported.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class Engine {
+
+    private final TranspositionTable tt;
+    private final Random random = new Random();
+    private Search[] searches;
+    private ExecutorService helpers;
+    private volatile OpeningBook book;
+    private volatile Tablebases tablebases;
+
+    public Engine(int hashMegabytes, int threads) {
+        this.tt = new TranspositionTable(hashMegabytes);
+        setThreads(threads);
+    }
+
+    /**
+     * @return the number of threads available to this JVM
+     */
+    public static int availableThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    public synchronized int threads() {
+        return searches.length;
+    }
+
+    /**
+     * Changes the number of searching threads, including the caller's. Must
+     * not be called while a search is running.
+     */
+    public synchronized void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("An engine needs at least one thread");
+        }
+
+        shutdown();
+
+        searches = new Search[threads];
+        for (int i = 0; i < threads; i++) {
+            searches[i] = new Search(tt);
+            searches[i].join(searches, i);
+        }
+
+        if (threads > 1) {
+            helpers = Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "kchess-search-helper");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+    }
+
+    public TranspositionTable transpositionTable() {
+        return tt;
+    }
+
+    public OpeningBook book() {
+        return book;
+    }
+
+    /**
+     * Sets the book to play from while it has moves for the position, or
+     * {@code null} to always search.
+     */
+    public void setBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    public Tablebases tablebases() {
+        return tablebases;
+    }
+
+    /**
+     * Sets the endgame tables the searches probe, or {@code null} for none.
+     * Takes effect from the next search.
+     */
+    public void setTablebases(Tablebases tablebases) {
+        this.tablebases = tablebases;
+    }
+
+    /**
+     * Searches {@code root} on every thread until {@code maxDepth} is reached
+     * or {@code time} runs out, blocking the caller until done. If the
+     * position is in the book, a book move is returned at once instead, with
+     * a depth of zero.
+     */
+    public SearchResult search(final Position root, TimeManager time, final int maxDepth) {
+        OpeningBook current = book;
+        if (current != null) {
+            int move = current.pick(root, random);
+            if (move != Move.NONE) {
+                return new SearchResult(move, 0, 0, 0, 0, new int[]{move});
+            }
+        }
+
+        Search[] group;
+        synchronized (this) {
+            group = searches;
+        }
+
+        tt.newSearch();
+        Tablebases tables = tablebases;
+        for (Search search : group) {
+            search.setTablebases(tables);
+            search.prepare();
+        }
+
+        Future<?>[] running = new Future<?>[group.length - 1];
+        for (int i = 1; i < group.length; i++) {
+            final Search helper = group[i];
+            running[i - 1] = helpers.submit(new Runnable() {
+                @Override
+                public void run() {
+                    helper.run(root, new TimeManager(TimeManager.UNLIMITED, TimeManager.UNLIMITED), maxDepth);
+                }
+            });
+        }
+
+        SearchResult result = group[0].run(root, time, maxDepth);
+
+        for (int i = 1; i < group.length; i++) {
+            group[i].stop();
+        }
+        for (Future<?> future : running) {
+            try {
+                future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                Logger.getLogger(Engine.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Asks a running search to stop, as if its time had run out.
+     */
+    public void stop() {
+        Search[] group;
+        synchronized (this) {
+            group = searches;
+        }
+
+        for (Search search : group) {
+            search.stop();
+        }
+    }
+
+    /**
+     * Stops the helper threads. The engine may still search afterwards on
+     * the caller's thread alone, or after {@link #setThreads}.
+     */
+    public synchronized void shutdown() {
+        if (helpers != null) {
+            helpers.shutdownNow();
+            helpers = null;
+        }
+        if (searches != null && searches.length > 1) {
+            searches = new Search[]{searches[0]};
+            searches[0].join(searches, 0);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.engine;
+
+import com.github.escortkeel.kchess.board.PieceSquare;
+import com.github.escortkeel.kchess.board.Position;
+
+/**
+ * Static evaluation from material and piece-square tables, in centipawns
+ * from the point of view of the side to move. The middlegame and endgame
+ * totals are kept up to date by {@link Position} as moves are made, and are
+ * blended by how much material is left, so evaluating costs the same
+ * however many pieces are on the board.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class Evaluator {
+
+    /**
+     * Material values by piece type, for ordering moves and resolving
+     * exchanges.
+     */
+    static final int[] VALUES = new int[Position.KING + 1];
+
+    static {
+        for (int type = Position.PAWN; type <= Position.KING; type++) {
+            VALUES[type] = PieceSquare.value(type);
+        }
+    }
+
+    private Evaluator() {
+    }
+
+    public static int evaluate(Position position) {
+        int phase = Math.min(position.phase(), PieceSquare.MAX_PHASE);
+        int score = (position.midgameScore() * phase + position.endgameScore() * (PieceSquare.MAX_PHASE - phase))
+                / PieceSquare.MAX_PHASE;
+        return position.sideToMove() == Position.WHITE ? score : -score;
+    }
+}
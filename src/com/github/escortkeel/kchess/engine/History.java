@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.engine;
+
+import com.github.escortkeel.kchess.board.Move;
+import com.github.escortkeel.kchess.board.Position;
+
+/**
+ * What a search has learnt about quiet moves, for ordering them: two killer
+ * moves per ply that recently caused a cutoff there, a butterfly table
+ * scoring each side's moves by their squares, and for each piece and square
+ * the move that last refuted the opponent moving that piece there.
+ * <p>
+ * History scores are updated by a bonus that shrinks as a score nears
+ * {@link #MAX_SCORE}, so they stay bounded without being rescaled.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+final class History {
+
+    static final int MAX_SCORE = 16384;
+    private final int[][] killers = new int[Search.MAX_PLY][2];
+    private final int[][] butterfly = new int[2][64 * 64];
+    private final int[][] counters = new int[12][64];
+
+    /**
+     * Forgets killers, which belong to the last search's plies, and halves
+     * the history scores so that recent results count for more.
+     */
+    void age() {
+        for (int[] slots : killers) {
+            slots[0] = slots[1] = Move.NONE;
+        }
+        for (int[] scores : butterfly) {
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] /= 2;
+            }
+        }
+    }
+
+    int killer(int ply, int slot) {
+        return killers[ply][slot];
+    }
+
+    int score(int colour, int move) {
+        return butterfly[colour][move & 0xFFF];
+    }
+
+    /**
+     * @return the move that last refuted the move just made in
+     * {@code position}, or {@link Move#NONE}
+     */
+    int counter(Position position) {
+        int last = position.ply() > 0 ? position.lastMove(1) : Move.NONE;
+        if (last == Move.NONE) {
+            return Move.NONE;
+        }
+        return counters[position.pieceAt(Move.to(last))][Move.to(last)];
+    }
+
+    /**
+     * Records that the quiet move {@code best} caused a cutoff at
+     * {@code ply}, after the quiet moves in {@code tried} had failed to.
+     */
+    void update(Position position, int ply, int depth, int best, int[] tried, int count) {
+        if (killers[ply][0] != best) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = best;
+        }
+
+        int last = position.ply() > 0 ? position.lastMove(1) : Move.NONE;
+        if (last != Move.NONE) {
+            counters[position.pieceAt(Move.to(last))][Move.to(last)] = best;
+        }
+
+        int us = position.sideToMove(), bonus = Math.min(depth * depth, 400);
+        reward(butterfly[us], best, bonus);
+        for (int i = 0; i < count; i++) {
+            reward(butterfly[us], tried[i], -bonus);
+        }
+    }
+
+    private static void reward(int[] scores, int move, int bonus) {
+        int i = move & 0xFFF;
+        scores[i] += bonus - scores[i] * Math.abs(bonus) / MAX_SCORE;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.engine;
+
+import com.github.escortkeel.kchess.board.Move;
+import com.github.escortkeel.kchess.board.MoveGenerator;
+import com.github.escortkeel.kchess.board.Position;
+
+/**
+ * Hands out the legal moves of one node in the order a search should try
+ * them, generating them in stages so that a node cut off early never
+ * generates the rest: the hash move, then captures and queen promotions
+ * that do not lose material by most valuable victim and least valuable
+ * attacker, then the killer moves and counter-move, then the remaining
+ * quiet moves by history score, and last the losing captures and
+ * under-promotions. A quiescence picker stops after the winning captures.
+ * <p>
+ * One picker serves one ply of one search, and owns its buffers.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+final class MovePicker {
+
+    private static final int HASH_MOVE = 0;
+    private static final int GENERATE_CAPTURES = 1;
+    private static final int GOOD_CAPTURES = 2;
+    private static final int REFUTATIONS = 3;
+    private static final int GENERATE_QUIETS = 4;
+    private static final int QUIETS = 5;
+    private static final int BAD_CAPTURES = 6;
+    private static final int DONE = 7;
+    private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+    private final int[] scores = new int[MoveGenerator.MAX_MOVES];
+    private final int[] bad = new int[MoveGenerator.MAX_MOVES];
+    private final int[] refutations = new int[3];
+    private final StaticExchange exchange;
+    private Position position;
+    private History history;
+    private boolean quiescence;
+    private int stage;
+    private int hashMove;
+    private int next;
+    private int count;
+    private int badCount;
+    private int refutationCount;
+
+    MovePicker(StaticExchange exchange) {
+        this.exchange = exchange;
+    }
+
+    /**
+     * Starts picking every legal move of {@code position}, a node at
+     * {@code ply}, trying {@code hashMove} first if it is legal.
+     */
+    void reset(Position position, History history, int hashMove, int ply) {
+        this.position = position;
+        this.history = history;
+        quiescence = false;
+        stage = HASH_MOVE;
+        this.hashMove = isLegal(hashMove) ? hashMove : Move.NONE;
+        badCount = next = 0;
+
+        refutationCount = 0;
+        addRefutation(history.killer(ply, 0));
+        addRefutation(history.killer(ply, 1));
+        addRefutation(history.counter(position));
+    }
+
+    /**
+     * Starts picking only the captures and queen promotions of
+     * {@code position} that do not lose material.
+     */
+    void resetQuiescence(Position position) {
+        this.position = position;
+        quiescence = true;
+        stage = GENERATE_CAPTURES;
+        hashMove = Move.NONE;
+        badCount = next = refutationCount = 0;
+    }
+
+    /**
+     * @return the next move, or {@link Move#NONE} once there are no more
+     */
+    @SuppressWarnings("fallthrough")
+    int next() {
+        switch (stage) {
+            case HASH_MOVE:
+                stage = GENERATE_CAPTURES;
+                if (hashMove != Move.NONE) {
+                    return hashMove;
+                }
+            // fall through
+            case GENERATE_CAPTURES:
+                count = MoveGenerator.generateCaptures(position, moves);
+                for (int i = 0; i < count; i++) {
+                    scores[i] = captureScore(moves[i]);
+                }
+                next = 0;
+                stage = GOOD_CAPTURES;
+            // fall through
+            case GOOD_CAPTURES:
+                while (next < count) {
+                    int move = pick(next++);
+                    if (move == hashMove) {
+                        continue;
+                    }
+                    if (loses(move)) {
+                        bad[badCount++] = move;
+                        continue;
+                    }
+                    return move;
+                }
+                if (quiescence) {
+                    stage = DONE;
+                    return Move.NONE;
+                }
+                next = 0;
+                stage = REFUTATIONS;
+            // fall through
+            case REFUTATIONS:
+                if (next < refutationCount) {
+                    return refutations[next++];
+                }
+                stage = GENERATE_QUIETS;
+            // fall through
+            case GENERATE_QUIETS:
+                count = MoveGenerator.generateQuiets(position, moves);
+                int us = position.sideToMove();
+                for (int i = 0; i < count; i++) {
+                    scores[i] = history.score(us, moves[i]);
+                }
+                next = 0;
+                stage = QUIETS;
+            // fall through
+            case QUIETS:
+                while (next < count) {
+                    int move = pick(next++);
+                    if (move != hashMove && !isRefutation(move)) {
+                        return move;
+                    }
+                }
+                next = 0;
+                stage = BAD_CAPTURES;
+            // fall through
+            case BAD_CAPTURES:
+                if (next < badCount) {
+                    return bad[next++];
+                }
+                stage = DONE;
+            // fall through
+            default:
+                return Move.NONE;
+        }
+    }
+
+    /**
+     * @return whether {@code move} is a killer or counter-move already
+     * handed out
+     */
+    boolean isRefutation(int move) {
+        for (int i = 0; i < refutationCount; i++) {
+            if (refutations[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addRefutation(int move) {
+        if (move != Move.NONE && move != hashMove && !isRefutation(move) && isLegal(move)
+                && !Move.isCapture(move) && !Move.isPromotion(move)) {
+            refutations[refutationCount++] = move;
+        }
+    }
+
+    /**
+     * @return whether {@code move}, which may come from another position, is
+     * legal here exactly as encoded
+     */
+    private boolean isLegal(int move) {
+        return move != Move.NONE
+                && MoveGenerator.legalMove(position, Move.from(move), Move.to(move), Move.promotion(move)) == move;
+    }
+
+    /**
+     * @return the most valuable victim, least valuable attacker score of a
+     * capture or promotion
+     */
+    private int captureScore(int move) {
+        int victim = Move.isEnPassant(move) ? Position.PAWN : Position.typeOf(position.pieceAt(Move.to(move)));
+        int attacker = Position.typeOf(position.pieceAt(Move.from(move)));
+        int score = (Move.isCapture(move) ? 10 * Evaluator.VALUES[victim] : 0) - attacker;
+        if (Move.isPromotion(move)) {
+            score += 10 * Evaluator.VALUES[Move.promotion(move)];
+        }
+        return score;
+    }
+
+    /**
+     * @return whether {@code move} is an under-promotion or a capture that
+     * loses material in the exchange
+     */
+    private boolean loses(int move) {
+        if (Move.isPromotion(move)) {
+            return Move.promotion(move) != Position.QUEEN;
+        }
+        int victim = Move.isEnPassant(move) ? Position.PAWN : Position.typeOf(position.pieceAt(Move.to(move)));
+        int attacker = Position.typeOf(position.pieceAt(Move.from(move)));
+        return Evaluator.VALUES[victim] < Evaluator.VALUES[attacker] && exchange.evaluate(position, move) < 0;
+    }
+
+    private int pick(int from) {
+        int best = from;
+        for (int i = from + 1; i < count; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+
+        int move = moves[best], s = scores[best];
+        moves[best] = moves[from];
+        scores[best] = scores[from];
+        moves[from] = move;
+        scores[from] = s;
+        return move;
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.engine;
+
+import com.github.escortkeel.kchess.board.Move;
+import com.github.escortkeel.kchess.board.MoveGenerator;
+import com.github.escortkeel.kchess.board.Position;
+import com.github.escortkeel.kchess.tablebase.Tablebases;
+
+/**
+ * A single-threaded negamax alpha-beta search with iterative deepening,
+ * aspiration windows, a transposition table, null-move pruning, late move
+ * reductions and a quiescence search over captures that do not lose
+ * material. Moves are tried in the order a {@link MovePicker} gives them,
+ * guided by a {@link History} of earlier cutoffs. Positions below the root
+ * that are in an endgame table are scored from it without searching.
+ * <p>
+ * A {@code Search} owns all of its working buffers, so searching allocates
+ * nothing per node. One instance must only be used by one thread at a time.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class Search {
+
+    public static final int MAX_PLY = 128;
+    public static final int INFINITY = 32000;
+    public static final int MATE = 31000;
+    private static final int MATE_BOUND = MATE - MAX_PLY;
+    private static final int ASPIRATION_WINDOW = 25;
+    private final TranspositionTable tt;
+    private final Position position = new Position();
+    private final int[] rootMoves = new int[MoveGenerator.MAX_MOVES];
+    private final int[][] quiets = new int[MAX_PLY][MoveGenerator.MAX_MOVES];
+    private final MovePicker[] pickers = new MovePicker[MAX_PLY];
+    private final History history = new History();
+    private final int[][] pv = new int[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pvLength = new int[MAX_PLY + 1];
+    private static final int[] SKIP_SIZE = {1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 4, 4, 4, 4, 4, 4, 4, 4};
+    private static final int[] SKIP_PHASE = {0, 1, 0, 1, 2, 3, 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 5, 6, 7};
+    private TimeManager time;
+    private Tablebases tablebases;
+    private long nodes;
+    private volatile boolean stopped;
+    private int helper;
+    private Search[] group;
+
+    public Search(TranspositionTable tt) {
+        this.tt = tt;
+        StaticExchange exchange = new StaticExchange();
+        for (int ply = 0; ply < MAX_PLY; ply++) {
+            pickers[ply] = new MovePicker(exchange);
+        }
+    }
+
+    /**
+     * Sets the endgame tables to probe, or {@code null} for none. Must not
+     * be called while a search is running.
+     */
+    public void setTablebases(Tablebases tablebases) {
+        this.tablebases = tablebases;
+    }
+
+    /**
+     * Requests that a running search stops as soon as possible. The search
+     * still returns the result of its last completed iteration.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @return the nodes searched so far by the current or last search
+     */
+    public long nodes() {
+        return nodes;
+    }
+
+    /**
+     * Searches {@code root} by iterative deepening until {@code maxDepth} is
+     * reached or {@code time} runs out.
+     */
+    public SearchResult search(Position root, TimeManager time, int maxDepth) {
+        prepare();
+        tt.newSearch();
+        return run(root, time, maxDepth);
+    }
+
+    /**
+     * Makes this search one of a group sharing a transposition table. Helper
+     * {@code helper} (zero for the main search) skips a staggered set of
+     * depths, and node budgets count the nodes of the whole group.
+     */
+    void join(Search[] group, int helper) {
+        this.group = group;
+        this.helper = helper;
+    }
+
+    /**
+     * Clears the stop flag and node count ahead of {@link #run}, so that a
+     * stop requested before this search's thread gets going is not lost,
+     * and ages the move ordering history.
+     */
+    void prepare() {
+        stopped = false;
+        nodes = 0;
+        history.age();
+    }
+
+    SearchResult run(Position root, TimeManager time, int maxDepth) {
+        this.time = time;
+        position.copyFrom(root);
+        time.start();
+
+        if (MoveGenerator.generateMoves(position, rootMoves) == 0) {
+            return new SearchResult(Move.NONE, position.inCheck() ? -MATE : 0, 0, 0, time.elapsed(), new int[0]);
+        }
+
+        int bestMove = rootMoves[0], bestScore = 0, completed = 0;
+        int[] bestPv = {bestMove};
+        maxDepth = Math.min(maxDepth, MAX_PLY - 1);
+
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            if (depth > 1 && !time.canStartIteration(groupNodes())) {
+                break;
+            }
+
+            if (helper > 0 && depth > 1 && skipDepth(depth)) {
+                continue;
+            }
+
+            int delta = ASPIRATION_WINDOW;
+            int alpha = -INFINITY, beta = INFINITY;
+            if (depth >= 4) {
+                alpha = Math.max(bestScore - delta, -INFINITY);
+                beta = Math.min(bestScore + delta, INFINITY);
+            }
+
+            int score;
+            while (true) {
+                score = negamax(depth, alpha, beta, 0, true);
+                if (stopped) {
+                    break;
+                }
+
+                if (score <= alpha) {
+                    alpha = Math.max(score - delta, -INFINITY);
+                } else if (score >= beta) {
+                    beta = Math.min(score + delta, INFINITY);
+                } else {
+                    break;
+                }
+                delta *= 2;
+            }
+
+            if (stopped) {
+                break;
+            }
+
+            bestScore = score;
+            bestMove = pv[0][0];
+            bestPv = new int[pvLength[0]];
+            System.arraycopy(pv[0], 0, bestPv, 0, pvLength[0]);
+            completed = depth;
+
+            if (Math.abs(score) >= MATE_BOUND && MATE - Math.abs(score) <= depth) {
+                break;
+            }
+        }
+
+        return new SearchResult(bestMove, bestScore, completed, groupNodes(), time.elapsed(), bestPv);
+    }
+
+    private boolean skipDepth(int depth) {
+        int i = (helper - 1) % SKIP_SIZE.length;
+        return ((depth + SKIP_PHASE[i]) / SKIP_SIZE[i]) % 2 != 0;
+    }
+
+    /**
+     * @return the nodes searched by every search in the group, read without
+     * synchronisation and so only approximate while the others are running
+     */
+    private long groupNodes() {
+        if (group == null) {
+            return nodes;
+        }
+
+        long total = 0;
+        for (Search search : group) {
+            total += search.nodes;
+        }
+        return total;
+    }
+
+    private boolean checkTime() {
+        if ((++nodes & 2047) == 0 && time.isExpired(groupNodes())) {
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    private int negamax(int depth, int alpha, int beta, int ply, boolean pvNode) {
+        pvLength[ply] = ply;
+
+        if (checkTime()) {
+            return 0;
+        }
+
+        if (ply > 0 && (position.halfmoveClock() >= 100 || position.isRepetition() || position.isInsufficientMaterial())) {
+            return 0;
+        }
+
+        if (ply >= MAX_PLY - 1) {
+            return Evaluator.evaluate(position);
+        }
+
+        if (ply > 0 && tablebases != null && Long.bitCount(position.occupied()) <= Tablebases.MAX_PIECES) {
+            int value = tablebases.probe(position);
+            if (value != Tablebases.UNKNOWN) {
+                int plies = ply + Tablebases.plies(value);
+                return value == 0 ? 0 : value > 0 ? MATE - plies : -MATE + plies;
+            }
+        }
+
+        long hash = position.hash();
+        long data = tt.probe(hash);
+        int ttMove = Move.NONE;
+        if (data != 0) {
+            ttMove = TranspositionTable.move(data);
+            if (!pvNode && TranspositionTable.depth(data) >= depth) {
+                int score = fromTT(TranspositionTable.score(data), ply);
+                int bound = TranspositionTable.bound(data);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && score >= beta)
+                        || (bound == TranspositionTable.UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        boolean inCheck = position.inCheck();
+        if (inCheck) {
+            depth++;
+        }
+
+        if (depth <= 0) {
+            return quiesce(alpha, beta, ply);
+        }
+
+        if (!pvNode && !inCheck && depth >= 3 && hasNonPawnMaterial() && Evaluator.evaluate(position) >= beta) {
+            position.makeNullMove();
+            int score = -negamax(depth - 3, -beta, -beta + 1, ply + 1, false);
+            position.unmakeNullMove();
+
+            if (stopped) {
+                return 0;
+            }
+            if (score >= beta) {
+                return score >= MATE_BOUND ? beta : score;
+            }
+        }
+
+        MovePicker picker = pickers[ply];
+        picker.reset(position, history, ttMove, ply);
+        int[] tried = quiets[ply];
+
+        int bestScore = -INFINITY, bestMove = Move.NONE, originalAlpha = alpha, played = 0, quietCount = 0;
+        int move;
+        while ((move = picker.next()) != Move.NONE) {
+            boolean quiet = !Move.isCapture(move) && !Move.isPromotion(move);
+
+            position.makeMove(move);
+            int score;
+            if (played == 0) {
+                score = -negamax(depth - 1, -beta, -alpha, ply + 1, pvNode);
+            } else {
+                int reduction = 0;
+                if (depth >= 3 && played >= 4 && !inCheck && quiet && !picker.isRefutation(move)) {
+                    reduction = played >= 12 ? 2 : 1;
+                }
+
+                score = -negamax(depth - 1 - reduction, -alpha - 1, -alpha, ply + 1, false);
+                if (score > alpha && reduction > 0) {
+                    score = -negamax(depth - 1, -alpha - 1, -alpha, ply + 1, false);
+                }
+                if (score > alpha && score < beta && pvNode) {
+                    score = -negamax(depth - 1, -beta, -alpha, ply + 1, true);
+                }
+            }
+            position.unmakeMove();
+            played++;
+
+            if (stopped) {
+                return 0;
+            }
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = move;
+
+                if (score > alpha) {
+                    alpha = score;
+                    updatePv(ply, move);
+
+                    if (alpha >= beta) {
+                        if (quiet) {
+                            history.update(position, ply, depth, move, tried, quietCount);
+                        }
+                        break;
+                    }
+                }
+            }
+            if (quiet) {
+                tried[quietCount++] = move;
+            }
+        }
+
+        if (played == 0) {
+            return inCheck ? -MATE + ply : 0;
+        }
+
+        int bound = bestScore >= beta ? TranspositionTable.LOWER
+                : bestScore > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+        tt.store(hash, bestMove, toTT(bestScore, ply), depth, bound);
+
+        return bestScore;
+    }
+
+    private int quiesce(int alpha, int beta, int ply) {
+        pvLength[ply] = ply;
+
+        if (checkTime()) {
+            return 0;
+        }
+
+        int standPat = Evaluator.evaluate(position);
+        if (ply >= MAX_PLY - 1 || standPat >= beta) {
+            return standPat;
+        }
+        if (standPat > alpha) {
+            alpha = standPat;
+        }
+
+        MovePicker picker = pickers[ply];
+        picker.resetQuiescence(position);
+
+        int move;
+        while ((move = picker.next()) != Move.NONE) {
+            position.makeMove(move);
+            int score = -quiesce(-beta, -alpha, ply + 1);
+            position.unmakeMove();
+
+            if (stopped) {
+                return 0;
+            }
+
+            if (score > alpha) {
+                alpha = score;
+                updatePv(ply, move);
+
+                if (alpha >= beta) {
+                    break;
+                }
+            }
+        }
+
+        return alpha;
+    }
+
+    private boolean hasNonPawnMaterial() {
+        int us = position.sideToMove();
+        return (position.colour(us) & ~position.pieces(us, Position.PAWN) & ~position.pieces(us, Position.KING)) != 0;
+    }
+
+    private void updatePv(int ply, int move) {
+        pv[ply][ply] = move;
+        System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, pvLength[ply + 1] - ply - 1);
+        pvLength[ply] = Math.max(pvLength[ply + 1], ply + 1);
+    }
+
+    private static int toTT(int score, int ply) {
+        return score >= MATE_BOUND ? score + ply : score <= -MATE_BOUND ? score - ply : score;
+    }
+
+    private static int fromTT(int score, int ply) {
+        return score >= MATE_BOUND ? score - ply : score <= -MATE_BOUND ? score + ply : score;
+    }
+}
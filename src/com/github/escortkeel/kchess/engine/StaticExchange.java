@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.engine;
+
+import com.github.escortkeel.kchess.board.Move;
+import com.github.escortkeel.kchess.board.Position;
+
+/**
+ * Static exchange evaluation: the material won or lost by a capture once
+ * every piece bearing on the target square, cheapest first, has joined in
+ * and either side has stopped when it pays to. Sliders behind a piece that
+ * takes part are found as the board empties. Pins and checks are ignored.
+ * <p>
+ * Each instance keeps its own scratch space and must only be used by one
+ * thread at a time.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class StaticExchange {
+
+    private final int[] gains = new int[32];
+
+    /**
+     * @return the material, in centipawns, that the side to move nets by
+     * playing {@code move}, which must be legal
+     */
+    public int evaluate(Position position, int move) {
+        int from = Move.from(move), to = Move.to(move);
+        int us = position.sideToMove();
+        long occupied = position.occupied() ^ (1L << from);
+
+        int victim = position.pieceAt(to);
+        if (Move.isEnPassant(move)) {
+            victim = Position.piece(us ^ 1, Position.PAWN);
+            occupied ^= 1L << (us == Position.WHITE ? to - 8 : to + 8);
+        }
+
+        int onSquare = Position.typeOf(position.pieceAt(from));
+        gains[0] = victim == Position.EMPTY ? 0 : Evaluator.VALUES[Position.typeOf(victim)];
+        if (Move.isPromotion(move)) {
+            onSquare = Move.promotion(move);
+            gains[0] += Evaluator.VALUES[onSquare] - Evaluator.VALUES[Position.PAWN];
+        }
+
+        int depth = 0, side = us ^ 1;
+        long attackers = position.attackersTo(to, occupied) & occupied;
+        while (depth < gains.length - 1) {
+            long ours = attackers & position.colour(side);
+            if (ours == 0) {
+                break;
+            }
+
+            int type = Position.PAWN;
+            while ((ours & position.pieces(side, type)) == 0) {
+                type++;
+            }
+            if (type == Position.KING && (attackers & position.colour(side ^ 1)) != 0) {
+                break;
+            }
+
+            depth++;
+            gains[depth] = Evaluator.VALUES[onSquare] - gains[depth - 1];
+
+            long piece = ours & position.pieces(side, type);
+            occupied ^= piece & -piece;
+            attackers = position.attackersTo(to, occupied) & occupied;
+            onSquare = type;
+            side ^= 1;
+        }
+
+        while (depth > 0) {
+            gains[depth - 1] = -Math.max(-gains[depth - 1], gains[depth]);
+            depth--;
+        }
+        return gains[0];
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.engine;
+
+/**
+ * Decides when a search must stop: at a deadline in milliseconds, after a
+ * budget of nodes, or whichever comes first.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class TimeManager {
+
+    public static final long UNLIMITED = Long.MAX_VALUE;
+    private final long millis;
+    private final long nodes;
+    private long start;
+
+    /**
+     * @param millis the time allowed, or {@link #UNLIMITED}
+     * @param nodes the nodes allowed, or {@link #UNLIMITED}
+     */
+    public TimeManager(long millis, long nodes) {
+        this.millis = millis;
+        this.nodes = nodes;
+        start();
+    }
+
+    public static TimeManager millis(long millis) {
+        return new TimeManager(millis, UNLIMITED);
+    }
+
+    public static TimeManager nodes(long nodes) {
+        return new TimeManager(UNLIMITED, nodes);
+    }
+
+    public void start() {
+        start = System.nanoTime();
+    }
+
+    /**
+     * @return the milliseconds elapsed since {@link #start}
+     */
+    public long elapsed() {
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * @return whether the search must stop now, having searched
+     * {@code searched} nodes
+     */
+    public boolean isExpired(long searched) {
+        return searched >= nodes || (millis != UNLIMITED && elapsed() >= millis);
+    }
+
+    /**
+     * Each iteration of a deepening search typically costs more than all of
+     * the earlier ones together, so a new one is only worth starting while
+     * less than half of the time has gone.
+     */
+    public boolean canStartIteration(long searched) {
+        return searched < nodes && (millis == UNLIMITED || elapsed() < millis / 2);
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.engine;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size, lock-free transposition table which may be shared by any
+ * number of searching threads.
+ * <p>
+ * Entries live in a flat {@code long[]} as pairs of words: the position key
+ * XOR the data, then the data itself. A probe only accepts an entry whose
+ * two words XOR back to the key it asked for, so an entry torn by a
+ * concurrent store is simply treated as a miss. Entries are grouped into
+ * buckets of {@link #BUCKET_SIZE}; a store replaces the slot already holding
+ * the same position, or else the one with the lowest depth once aged. A
+ * deeper entry for the same position from the current search is kept,
+ * though, unless the new result is exact.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class TranspositionTable {
+
+    public static final int UPPER = 1;
+    public static final int LOWER = 2;
+    public static final int EXACT = 3;
+    public static final int BUCKET_SIZE = 2;
+    private static final int ENTRY_BYTES = 16;
+    private static final int MOVE_BITS = 19;
+    private static final int SCORE_SHIFT = MOVE_BITS;
+    private static final int DEPTH_SHIFT = SCORE_SHIFT + 16;
+    private static final int BOUND_SHIFT = DEPTH_SHIFT + 8;
+    private static final int AGE_SHIFT = BOUND_SHIFT + 2;
+    private static final int AGE_MASK = 63;
+    private static final long MAX_BUCKETS = 1L << 28;
+    private long[] table;
+    private long bucketMask;
+    private volatile int age;
+
+    /**
+     * Creates a table using at most {@code megabytes} of memory.
+     */
+    public TranspositionTable(int megabytes) {
+        resize(megabytes);
+    }
+
+    /**
+     * Reallocates the table to use at most {@code megabytes} of memory,
+     * rounded down to a power-of-two number of buckets. The table must not be
+     * in use by a search.
+     */
+    public void resize(int megabytes) {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("Transposition table size must be at least 1 MB");
+        }
+
+        long buckets = Math.min(MAX_BUCKETS, Long.highestOneBit(((long) megabytes << 20) / (ENTRY_BYTES * BUCKET_SIZE)));
+
+        table = new long[(int) (buckets * 2 * BUCKET_SIZE)];
+        bucketMask = buckets - 1;
+        age = 0;
+    }
+
+    /**
+     * @return the size of the table in megabytes
+     */
+    public int megabytes() {
+        return (int) (((long) table.length * 8) >>> 20);
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        age = 0;
+    }
+
+    /**
+     * Marks the start of a new search, so that entries stored by earlier
+     * searches become preferred for replacement.
+     */
+    public void newSearch() {
+        age = (age + 1) & AGE_MASK;
+    }
+
+    /**
+     * @return the data stored for {@code hash}, to be unpacked with
+     * {@link #move}, {@link #score}, {@link #depth} and {@link #bound}, or 0
+     * if there is no entry
+     */
+    public long probe(long hash) {
+        long[] t = table;
+        int base = (int) (hash & bucketMask) * 2 * BUCKET_SIZE;
+        for (int i = base; i < base + 2 * BUCKET_SIZE; i += 2) {
+            long data = t[i + 1];
+            if ((t[i] ^ data) == hash && data != 0) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    public void store(long hash, int move, int score, int depth, int bound) {
+        long[] t = table;
+        int base = (int) (hash & bucketMask) * 2 * BUCKET_SIZE;
+        int currentAge = age;
+
+        int victim = base;
+        int worst = Integer.MAX_VALUE;
+        for (int i = base; i < base + 2 * BUCKET_SIZE; i += 2) {
+            long data = t[i + 1];
+            if ((t[i] ^ data) == hash) {
+                if (depth(data) > depth && bound != EXACT && age(data) == currentAge) {
+                    return;
+                }
+                if (move == 0) {
+                    move = move(data);
+                }
+                victim = i;
+                break;
+            }
+
+            int value = depth(data) - 8 * ((currentAge - age(data)) & AGE_MASK);
+            if (data == 0) {
+                value = Integer.MIN_VALUE;
+            }
+            if (value < worst) {
+                worst = value;
+                victim = i;
+            }
+        }
+
+        long data = (move & ((1L << MOVE_BITS) - 1))
+                | ((score & 0xFFFFL) << SCORE_SHIFT)
+                | ((long) Math.max(0, Math.min(depth, 255)) << DEPTH_SHIFT)
+                | ((long) bound << BOUND_SHIFT)
+                | ((long) currentAge << AGE_SHIFT);
+
+        t[victim] = hash ^ data;
+        t[victim + 1] = data;
+    }
+
+    /**
+     * @return the approximate number of entries, per thousand, written by
+     * the current search
+     */
+    public int hashfull() {
+        long[] t = table;
+        int samples = Math.min(1000, t.length / 2), used = 0;
+        for (int i = 0; i < samples; i++) {
+            long data = t[2 * i + 1];
+            if (data != 0 && age(data) == age) {
+                used++;
+            }
+        }
+        return used * 1000 / samples;
+    }
+
+    public static int move(long data) {
+        return (int) (data & ((1L << MOVE_BITS) - 1));
+    }
+
+    public static int score(long data) {
+        return (short) (data >>> SCORE_SHIFT);
+    }
+
+    public static int depth(long data) {
+        return (int) ((data >>> DEPTH_SHIFT) & 255);
+    }
+
+    public static int bound(long data) {
+        return (int) ((data >>> BOUND_SHIFT) & 3);
+    }
+
+    private static int age(long data) {
+        return (int) ((data >>> AGE_SHIFT) & AGE_MASK);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.io;
+
+import com.github.escortkeel.kchess.board.Move;
+import com.github.escortkeel.kchess.board.MoveGenerator;
+import com.github.escortkeel.kchess.board.Position;
+
+/**
+ * The layout of a KChess game archive. All numbers are big-endian.
+ *
+ * <pre>
+ * header   magic "KCHA", u16 version, u16 reserved, u32 game count,
+ *          i64 offset of the index, padded to {@link #HEADER_SIZE} bytes
+ * games    one record per game, back to back
+ * index    i64 offset of each game's record
+ * </pre>
+ *
+ * A record is a u8 result code, a u16 tag count followed by each tag's name
+ * and value as u16-length-prefixed UTF-8, then a u16 ply count and one move
+ * code per ply. The result is stored only in the result code, not as a tag.
+ * <p>
+ * A move code is the index of the move among the pseudo-legal moves of the
+ * side to move, taken piece by piece in square order and, for each piece, in
+ * destination square order; a pawn move to the last rank counts once for
+ * each promotion from knight to queen. Codes below {@link #ESCAPE} take one
+ * byte, larger ones the escape byte and a u16. Since only bit counts are
+ * needed to find a move, replaying never has to generate the move list.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+final class ArchiveFormat {
+
+    static final int MAGIC = 0x4B434841;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final String[] RESULTS = {Game.UNKNOWN, Game.WHITE_WINS, Game.BLACK_WINS, Game.DRAW};
+    static final int ESCAPE = 0xFF;
+    private static final int PROMOTIONS = Position.QUEEN - Position.KNIGHT + 1;
+
+    private ArchiveFormat() {
+    }
+
+    static int resultCode(String result) {
+        for (int i = 0; i < RESULTS.length; i++) {
+            if (RESULTS[i].equals(result)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the code of the legal {@code move} in {@code position}
+     */
+    static int encode(Position position, int move) {
+        int from = Move.from(move), to = Move.to(move), code = 0;
+        long pieces = position.colour(position.sideToMove()) & ((1L << from) - 1);
+        while (pieces != 0) {
+            int sq = Long.numberOfTrailingZeros(pieces);
+            code += weight(position, sq) * Long.bitCount(position.targets(sq));
+            pieces &= pieces - 1;
+        }
+
+        int weight = weight(position, from);
+        code += weight * Long.bitCount(position.targets(from) & ((1L << to) - 1));
+        return weight == 1 ? code : code + Move.promotion(move) - Position.KNIGHT;
+    }
+
+    /**
+     * @return the legal move with the given code in {@code position}, or
+     * {@link Move#NONE} if there is none
+     */
+    static int decode(Position position, int code) {
+        long pieces = position.colour(position.sideToMove());
+        while (pieces != 0) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            long targets = position.targets(from);
+            int weight = weight(position, from), moves = weight * Long.bitCount(targets);
+            if (code < moves) {
+                for (int i = code / weight; i > 0; i--) {
+                    targets &= targets - 1;
+                }
+                int to = Long.numberOfTrailingZeros(targets);
+                return MoveGenerator.legalMove(position, from, to, Position.KNIGHT + code % weight);
+            }
+            code -= moves;
+            pieces &= pieces - 1;
+        }
+        return Move.NONE;
+    }
+
+    private static int weight(Position position, int sq) {
+        int piece = position.pieceAt(sq);
+        if (Position.typeOf(piece) != Position.PAWN) {
+            return 1;
+        }
+        return Position.rankOf(sq) == (Position.colourOf(piece) == Position.WHITE ? 6 : 1) ? PROMOTIONS : 1;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.io;
+
+import com.github.escortkeel.kchess.board.Move;
+import com.github.escortkeel.kchess.board.Position;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads games from a binary archive written by {@link ArchiveWriter}. The
+ * offset index is memory-mapped, so any game can be read directly by its
+ * number. A reader keeps a scratch position and buffer and must not be
+ * shared between threads.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class ArchiveReader implements Iterable<Game>, Closeable {
+
+    private final FileChannel channel;
+    private final int count;
+    private final long indexOffset;
+    private final LongBuffer index;
+    private final Position position = new Position();
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+    public ArchiveReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        ByteBuffer header = ByteBuffer.allocate(ArchiveFormat.HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+        }
+        header.flip();
+        if (header.remaining() < ArchiveFormat.HEADER_SIZE || header.getInt() != ArchiveFormat.MAGIC) {
+            throw new IOException("Not a KChess archive");
+        }
+        if (header.getShort() != ArchiveFormat.VERSION) {
+            throw new IOException("Unsupported archive version");
+        }
+        header.getShort();
+
+        count = header.getInt();
+        indexOffset = header.getLong();
+        if (count < 0 || indexOffset < ArchiveFormat.HEADER_SIZE || indexOffset + 8L * count > channel.size()) {
+            throw new IOException("Corrupt archive header");
+        }
+        index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, 8L * count).asLongBuffer();
+    }
+
+    /**
+     * @return the number of games in the archive
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Reads game {@code n}, counting from zero.
+     */
+    public Game game(int n) throws IOException {
+        if (n < 0 || n >= count) {
+            throw new IndexOutOfBoundsException("No game " + n);
+        }
+
+        long start = index.get(n), end = n + 1 < count ? index.get(n + 1) : indexOffset;
+        if (start < ArchiveFormat.HEADER_SIZE || end < start || end > indexOffset) {
+            throw new IOException("Corrupt index entry for game " + n);
+        }
+        int length = (int) (end - start);
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+        }
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new IOException("Truncated archive");
+            }
+        }
+        buffer.flip();
+
+        try {
+            return decode();
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Corrupt record for game " + n, e);
+        }
+    }
+
+    private Game decode() throws IOException {
+        Game game = new Game();
+        int result = buffer.get() & 0xFF;
+        game.setResult(ArchiveFormat.RESULTS[result < ArchiveFormat.RESULTS.length ? result : 0]);
+
+        int tags = buffer.getShort() & 0xFFFF;
+        for (int i = 0; i < tags; i++) {
+            game.setTag(getString(), getString());
+        }
+
+        try {
+            game.start(position);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt starting position", e);
+        }
+
+        int plies = buffer.getShort() & 0xFFFF;
+        if (plies > Position.MAX_PLY) {
+            throw new IOException("Game too long to replay");
+        }
+        for (int ply = 0; ply < plies; ply++) {
+            int code = buffer.get() & 0xFF;
+            if (code == ArchiveFormat.ESCAPE) {
+                code = buffer.getShort() & 0xFFFF;
+            }
+            int move = ArchiveFormat.decode(position, code);
+            if (move == Move.NONE) {
+                throw new IOException("Corrupt move at ply " + ply);
+            }
+            game.addMove(move);
+            position.makeMove(move);
+        }
+        return game;
+    }
+
+    private String getString() throws IOException {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length > buffer.remaining()) {
+            throw new IOException("Corrupt string");
+        }
+        String s = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return s;
+    }
+
+    /**
+     * @return an iterator over every game in order
+     * @throws IllegalStateException from the iterator if a game cannot be read
+     */
+    @Override
+    public Iterator<Game> iterator() {
+        return new Iterator<Game>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public Game next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return game(next++);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not read game " + (next - 1), e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Closes the underlying channel.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
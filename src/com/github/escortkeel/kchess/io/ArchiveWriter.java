@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.io;
+
+import com.github.escortkeel.kchess.board.Move;
+import com.github.escortkeel.kchess.board.MoveGenerator;
+import com.github.escortkeel.kchess.board.Position;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Writes games to a binary archive; see {@link ArchiveFormat} for the
+ * layout. Each move is stored as a compact code, nearly always one byte.
+ * Records are buffered and written sequentially, and the index and header
+ * are written on {@link #close}.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class ArchiveWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private final FileChannel channel;
+    private final Position position = new Position();
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long[] offsets = new long[1024];
+    private long flushed = ArchiveFormat.HEADER_SIZE;
+    private int count;
+
+    /**
+     * Starts a new archive, discarding anything already in {@code channel}.
+     */
+    public ArchiveWriter(FileChannel channel) throws IOException {
+        this.channel = channel;
+        channel.truncate(0);
+        channel.position(ArchiveFormat.HEADER_SIZE);
+    }
+
+    /**
+     * Appends a game.
+     *
+     * @throws IllegalArgumentException if the game contains an illegal move
+     */
+    public synchronized void write(Game game) throws IOException {
+        int start = buffer.position();
+        try {
+            encode(game);
+        } catch (IllegalArgumentException e) {
+            buffer.position(start);
+            throw e;
+        }
+
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        offsets[count++] = flushed + start;
+
+        if (buffer.position() >= BUFFER_SIZE / 2) {
+            flush();
+        }
+    }
+
+    /**
+     * @return the number of games written so far
+     */
+    public synchronized int count() {
+        return count;
+    }
+
+    private void encode(Game game) {
+        ensure(1 + 2);
+        buffer.put((byte) ArchiveFormat.resultCode(game.result()));
+
+        Map<String, String> tags = game.tags();
+        buffer.putShort((short) (tags.size() - (tags.containsKey("Result") ? 1 : 0)));
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            if (!tag.getKey().equals("Result")) {
+                putString(tag.getKey());
+                putString(tag.getValue());
+            }
+        }
+
+        if (game.length() > 0xFFFF) {
+            throw new IllegalArgumentException("Game too long to archive");
+        }
+        ensure(2 + 3 * game.length());
+        buffer.putShort((short) game.length());
+
+        game.start(position);
+        for (int ply = 0; ply < game.length(); ply++) {
+            int move = game.move(ply);
+            if (move == Move.NONE || MoveGenerator.legalMove(position, Move.from(move), Move.to(move), Move.promotion(move)) != move) {
+                throw new IllegalArgumentException("Illegal move at ply " + ply);
+            }
+
+            int code = ArchiveFormat.encode(position, move);
+            if (code < ArchiveFormat.ESCAPE) {
+                buffer.put((byte) code);
+            } else {
+                buffer.put((byte) ArchiveFormat.ESCAPE).putShort((short) code);
+            }
+            position.makeMove(move);
+        }
+    }
+
+    private void putString(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Tag too long to archive");
+        }
+        ensure(2 + bytes.length);
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            buffer.flip();
+            buffer = grown.put(buffer);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            flushed += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the index and header, and closes the underlying channel.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+
+            long indexOffset = flushed;
+            for (int i = 0; i < count; i++) {
+                ensure(8);
+                buffer.putLong(offsets[i]);
+                if (buffer.position() >= BUFFER_SIZE / 2) {
+                    flush();
+                }
+            }
+            flush();
+
+            ByteBuffer header = ByteBuffer.allocate(ArchiveFormat.HEADER_SIZE);
+            header.putInt(ArchiveFormat.MAGIC).putShort((short) ArchiveFormat.VERSION).putShort((short) 0)
+                    .putInt(count).putLong(indexOffset);
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
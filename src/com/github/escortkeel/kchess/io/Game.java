@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.io;
+
+import com.github.escortkeel.kchess.board.Fen;
+import com.github.escortkeel.kchess.board.Position;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A recorded game: its PGN tags, starting position and moves. Moves are kept
+ * in the packed form of {@link com.github.escortkeel.kchess.board.Move}.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class Game {
+
+    public static final String WHITE_WINS = "1-0";
+    public static final String BLACK_WINS = "0-1";
+    public static final String DRAW = "1/2-1/2";
+    public static final String UNKNOWN = "*";
+    private final Map<String, String> tags = new LinkedHashMap<>();
+    private int[] moves = new int[128];
+    private int count;
+
+    public Game() {
+        tags.put("Event", "?");
+        tags.put("Site", "?");
+        tags.put("Date", "????.??.??");
+        tags.put("Round", "?");
+        tags.put("White", "?");
+        tags.put("Black", "?");
+        tags.put("Result", UNKNOWN);
+    }
+
+    /**
+     * @return the value of a tag, or null if it is not set
+     */
+    public String tag(String name) {
+        return tags.get(name);
+    }
+
+    public void setTag(String name, String value) {
+        tags.put(name, value);
+    }
+
+    /**
+     * @return every tag in order, the seven tag roster first
+     */
+    public Map<String, String> tags() {
+        return tags;
+    }
+
+    /**
+     * @return the FEN the game starts from
+     */
+    public String fen() {
+        String fen = tags.get("FEN");
+        return fen != null ? fen : Fen.START;
+    }
+
+    /**
+     * Records a custom starting position, or the standard one if
+     * {@code fen} is null.
+     */
+    public void setFen(String fen) {
+        if (fen == null || fen.equals(Fen.START)) {
+            tags.remove("SetUp");
+            tags.remove("FEN");
+        } else {
+            tags.put("SetUp", "1");
+            tags.put("FEN", fen);
+        }
+    }
+
+    /**
+     * Sets {@code position} to the starting position of the game.
+     */
+    public void start(Position position) {
+        Fen.load(position, fen());
+    }
+
+    public String result() {
+        return tags.get("Result");
+    }
+
+    public void setResult(String result) {
+        tags.put("Result", result);
+    }
+
+    public void addMove(int move) {
+        if (count == moves.length) {
+            moves = Arrays.copyOf(moves, count * 2);
+        }
+        moves[count++] = move;
+    }
+
+    public int move(int ply) {
+        return moves[ply];
+    }
+
+    /**
+     * @return the number of plies played
+     */
+    public int length() {
+        return count;
+    }
+}
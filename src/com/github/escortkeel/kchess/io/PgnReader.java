@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.io;
+
+import com.github.escortkeel.kchess.board.Move;
+import com.github.escortkeel.kchess.board.Position;
+import com.github.escortkeel.kchess.board.San;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads games from a PGN file through a memory-mapped {@link FileChannel},
+ * so that files of any size can be read without loading them onto the heap.
+ * The file is mapped a window at a time, since a single mapping is limited
+ * to 2GB. Moves are decoded from SAN against the move generator.
+ * <p>
+ * A reader may cover just a range of the file; {@link #split} divides a file
+ * at game boundaries so that the ranges can be read on separate threads.
+ * Games with unreadable or illegal moves are skipped and counted in
+ * {@link #errors}.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class PgnReader implements Iterator<Game>, Closeable {
+
+    public static final long WINDOW_SIZE = 64L << 20;
+    private static final int EOF = -1;
+    private final FileChannel channel;
+    private final long end;
+    private final long size;
+    private final Position position = new Position();
+    private final StringBuilder token = new StringBuilder(64);
+    private byte[] bytes = new byte[256];
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long windowEnd;
+    private long pos;
+    private Game next;
+    private int errors;
+
+    /**
+     * Reads the games which start in {@code [start, end)}. {@code start} must
+     * be the start of a game or of the file.
+     */
+    public PgnReader(FileChannel channel, long start, long end) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.end = Math.min(end, size);
+        this.pos = start;
+    }
+
+    public PgnReader(FileChannel channel) throws IOException {
+        this(channel, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Divides a PGN file into at most {@code parts} ranges, each starting at a
+     * game boundary: a tag line following a blank line.
+     *
+     * @return the boundaries; range {@code i} is {@code [b[i], b[i + 1])}
+     */
+    public static long[] split(FileChannel channel, int parts) throws IOException {
+        long size = channel.size();
+        long[] boundaries = new long[parts + 1];
+        int count = 1;
+
+        PgnReader scanner = new PgnReader(channel);
+        for (int i = 1; i < parts; i++) {
+            long boundary = scanner.nextBoundary(Math.max(size * i / parts, boundaries[count - 1] + 1));
+            if (boundary >= size) {
+                break;
+            }
+            if (boundary > boundaries[count - 1]) {
+                boundaries[count++] = boundary;
+            }
+        }
+        boundaries[count++] = size;
+        return Arrays.copyOf(boundaries, count);
+    }
+
+    private long nextBoundary(long from) throws IOException {
+        pos = from;
+        int newlines = 0, b;
+        while ((b = read()) != EOF) {
+            if (b == '\n') {
+                newlines++;
+            } else if (b == '[' && newlines >= 2) {
+                return pos - 1;
+            } else if (b != '\r' && b != ' ' && b != '\t') {
+                newlines = 0;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of games skipped because they could not be read
+     */
+    public int errors() {
+        return errors;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (next == null) {
+                skipWhitespace();
+                if (pos >= end || peek() == EOF) {
+                    return false;
+                }
+                next = parseGame();
+            }
+            return true;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read PGN", e);
+        }
+    }
+
+    @Override
+    public Game next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Game game = next;
+        next = null;
+        return game;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Closes the underlying channel.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Parses the game at the current offset.
+     *
+     * @return the game, or null if it was skipped
+     */
+    private Game parseGame() throws IOException {
+        Game game = new Game();
+        while (peek() == '[') {
+            parseTag(game);
+            skipWhitespace();
+        }
+
+        try {
+            game.start(position);
+        } catch (IllegalArgumentException e) {
+            skipGame();
+            errors++;
+            return null;
+        }
+
+        while (true) {
+            skipWhitespace();
+            int b = peek();
+            if (b == EOF || b == '[') {
+                return game;
+            } else if (b == '{') {
+                skipPast('}');
+            } else if (b == ';' || b == '%') {
+                skipPast('\n');
+            } else if (b == '(') {
+                skipVariation();
+            } else {
+                readToken();
+                if (isResult()) {
+                    game.setResult(token.toString());
+                    return game;
+                } else if (!play(game)) {
+                    skipGame();
+                    errors++;
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Plays the move in {@code token}, unless it is a move number or NAG.
+     *
+     * @return false if the token is an illegal move
+     */
+    private boolean play(Game game) {
+        int start = 0;
+        while (start < token.length() && Character.isDigit(token.charAt(start))) {
+            start++;
+        }
+        while (start < token.length() && token.charAt(start) == '.') {
+            start++;
+        }
+        if (start == token.length() || token.charAt(0) == '$') {
+            return true;
+        }
+        if (start > 0) {
+            token.delete(0, start);
+        }
+
+        int move = San.parse(position, token);
+        if (move == Move.NONE || position.ply() == Position.MAX_PLY) {
+            return false;
+        }
+        position.makeMove(move);
+        game.addMove(move);
+        return true;
+    }
+
+    private boolean isResult() {
+        return equals(Game.WHITE_WINS) || equals(Game.BLACK_WINS) || equals(Game.DRAW) || equals(Game.UNKNOWN);
+    }
+
+    private boolean equals(String s) {
+        if (token.length() != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (token.charAt(i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void parseTag(Game game) throws IOException {
+        read();
+        skipWhitespace();
+
+        token.setLength(0);
+        int b;
+        while ((b = peek()) != EOF && b > ' ' && b != '"' && b != ']') {
+            token.append((char) read());
+        }
+        String name = token.toString();
+
+        skipWhitespace();
+        int length = 0;
+        if (peek() == '"') {
+            read();
+            while ((b = read()) != EOF && b != '"' && b != '\n') {
+                if (b == '\\') {
+                    b = read();
+                }
+                if (length == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, length * 2);
+                }
+                bytes[length++] = (byte) b;
+            }
+        }
+        skipPast(']');
+
+        if (!name.isEmpty()) {
+            game.setTag(name, new String(bytes, 0, length, StandardCharsets.UTF_8));
+        }
+    }
+
+    private void readToken() throws IOException {
+        token.setLength(0);
+        int b;
+        while ((b = peek()) != EOF && b > ' ' && b != '{' && b != '(' && b != ')' && b != ';' && b != '[') {
+            token.append((char) read());
+            if (b == '.' && (peek() < '0' || peek() > '9') && peek() != '.') {
+                break;
+            }
+        }
+        if (token.length() == 0) {
+            read();
+        }
+    }
+
+    private void skipVariation() throws IOException {
+        int depth = 0, b;
+        while ((b = read()) != EOF) {
+            if (b == '(') {
+                depth++;
+            } else if (b == ')' && --depth == 0) {
+                return;
+            } else if (b == '{') {
+                skipPast('}');
+            }
+        }
+    }
+
+    /**
+     * Skips the rest of a game which could not be read, up to its result or
+     * the next game's tags.
+     */
+    private void skipGame() throws IOException {
+        pos = nextBoundary(pos);
+    }
+
+    private void skipPast(int terminator) throws IOException {
+        int b;
+        while ((b = read()) != EOF && b != terminator) {
+        }
+    }
+
+    private void skipWhitespace() throws IOException {
+        int b;
+        while ((b = peek()) != EOF && (b <= ' ' || b == 0xEF || b == 0xBB || b == 0xBF)) {
+            read();
+        }
+    }
+
+    private int peek() throws IOException {
+        if (pos >= windowEnd || pos < windowStart) {
+            if (pos >= size) {
+                return EOF;
+            }
+            map(pos);
+        }
+        return window.get((int) (pos - windowStart)) & 0xFF;
+    }
+
+    private int read() throws IOException {
+        int b = peek();
+        if (b != EOF) {
+            pos++;
+        }
+        return b;
+    }
+
+    private void map(long offset) throws IOException {
+        windowStart = offset;
+        windowEnd = Math.min(size, offset + WINDOW_SIZE);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.io;
+
+import com.github.escortkeel.kchess.board.Position;
+import com.github.escortkeel.kchess.board.San;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes games in PGN export format. Games are written whole and flushed, so
+ * several threads may share one writer and each finished game is on disk as
+ * soon as {@link #write} returns. Each thread formats its games in its own
+ * buffers, so threads only wait for one another while text is written out.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class PgnWriter implements Closeable {
+
+    public static final int LINE_LENGTH = 79;
+    private final Writer out;
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    public PgnWriter(Writer out) {
+        this.out = out;
+    }
+
+    public void write(Game game) throws IOException {
+        Scratch local = scratch.get();
+        Position position = local.position;
+        StringBuilder text = local.text;
+
+        text.setLength(0);
+        for (Map.Entry<String, String> tag : game.tags().entrySet()) {
+            text.append('[').append(tag.getKey()).append(" \"");
+            escape(text, tag.getValue());
+            text.append("\"]\n");
+        }
+        text.append('\n');
+
+        game.start(position);
+        int lineStart = text.length();
+        for (int ply = 0; ply < game.length(); ply++) {
+            int tokenStart = text.length();
+            if (position.sideToMove() == Position.WHITE) {
+                text.append(position.fullmoveNumber()).append(". ");
+            } else if (ply == 0) {
+                text.append(position.fullmoveNumber()).append("... ");
+            }
+
+            int move = game.move(ply);
+            San.append(text, position, move);
+            position.makeMove(move);
+
+            lineStart = wrap(text, lineStart, tokenStart);
+            text.append(' ');
+        }
+
+        int tokenStart = text.length();
+        text.append(game.result());
+        wrap(text, lineStart, tokenStart);
+        text.append("\n\n");
+
+        synchronized (this) {
+            out.append(text);
+            out.flush();
+        }
+    }
+
+    /**
+     * Breaks the line before the token starting at {@code tokenStart} if the
+     * token would run past {@link #LINE_LENGTH}.
+     *
+     * @return the start of the current line
+     */
+    private static int wrap(StringBuilder text, int lineStart, int tokenStart) {
+        if (text.length() - lineStart > LINE_LENGTH && tokenStart > lineStart) {
+            text.setCharAt(tokenStart - 1, '\n');
+            return tokenStart;
+        }
+        return lineStart;
+    }
+
+    private static void escape(StringBuilder text, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                text.append('\\');
+            }
+            text.append(ch);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    private static final class Scratch {
+
+        final Position position = new Position();
+        final StringBuilder text = new StringBuilder(4096);
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.server;
+
+import com.github.escortkeel.kchess.board.Move;
+import com.github.escortkeel.kchess.board.MoveGenerator;
+import com.github.escortkeel.kchess.board.Position;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Load-tests a {@link GameServer}. Many clients connect at once, each playing
+ * random legal games move by move and waiting for every reply before it
+ * sends the next move. All clients share one selector thread. When every
+ * client has played its moves, the throughput and latency percentiles are
+ * printed.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class ClientSimulator {
+
+    /**
+     * Games are abandoned and restarted after this many plies, so that the
+     * clients mostly exercise middlegame positions.
+     */
+    public static final int MAX_GAME_PLY = 200;
+    private final InetSocketAddress address;
+    private final int clients;
+    private final int movesPerClient;
+    private final long[] latencies;
+    private int recorded;
+    private int finished;
+    private int errors;
+
+    public ClientSimulator(InetSocketAddress address, int clients, int movesPerClient) {
+        this.address = address;
+        this.clients = clients;
+        this.movesPerClient = movesPerClient;
+        this.latencies = new long[clients * movesPerClient];
+    }
+
+    /**
+     * Plays every client's moves against the server.
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    public long run() throws IOException {
+        Selector selector = Selector.open();
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < clients; i++) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                channel.connect(address);
+                channel.register(selector, SelectionKey.OP_CONNECT, new Client(i));
+            }
+
+            while (finished < clients) {
+                selector.select();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid()) {
+                        service(key);
+                    }
+                }
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return the number of moves played, all of which were timed
+     */
+    public int moves() {
+        return recorded;
+    }
+
+    /**
+     * @return the number of unexpected replies
+     */
+    public int errors() {
+        return errors;
+    }
+
+    /**
+     * @return the move latency, in nanoseconds, below which {@code fraction}
+     * of the moves were answered
+     */
+    public long percentile(double fraction) {
+        if (recorded == 0) {
+            return 0;
+        }
+
+        long[] sorted = Arrays.copyOf(latencies, recorded);
+        Arrays.sort(sorted);
+        return sorted[Math.min(recorded - 1, (int) Math.ceil(fraction * recorded) - 1)];
+    }
+
+    private void service(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Client client = (Client) key.attachment();
+
+        try {
+            if (key.isConnectable()) {
+                channel.finishConnect();
+                client.send("new");
+            }
+            if (key.isReadable() && !client.read(channel)) {
+                throw new IOException("Server closed the connection");
+            }
+            if (client.done) {
+                channel.close();
+                finished++;
+                return;
+            }
+
+            client.flush(channel);
+            key.interestOps(client.output.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        } catch (IOException e) {
+            channel.close();
+            errors++;
+            finished++;
+        }
+    }
+
+    private final class Client {
+
+        private final Position position = new Position();
+        private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+        private final Random random;
+        private final ByteBuffer input = ByteBuffer.allocate(1024);
+        private final ByteBuffer output = ByteBuffer.allocate(1024);
+        private final StringBuilder line = new StringBuilder(Session.MAX_LINE);
+        private int pending = Move.NONE;
+        private long sentAt;
+        private int played;
+        private boolean done;
+
+        Client(int seed) {
+            random = new Random(seed);
+            position.setStartPosition();
+        }
+
+        boolean read(SocketChannel channel) throws IOException {
+            if (channel.read(input) == -1) {
+                return false;
+            }
+
+            input.flip();
+            while (input.hasRemaining()) {
+                byte b = input.get();
+                if (b == '\n') {
+                    receive();
+                    line.setLength(0);
+                } else {
+                    line.append((char) b);
+                }
+            }
+            input.clear();
+            return true;
+        }
+
+        void flush(SocketChannel channel) throws IOException {
+            output.flip();
+            channel.write(output);
+            output.compact();
+        }
+
+        void send(CharSequence s) {
+            for (int i = 0; i < s.length(); i++) {
+                output.put((byte) s.charAt(i));
+            }
+            output.put((byte) '\n');
+        }
+
+        private void receive() {
+            if (pending == Move.NONE) {
+                if (!startsWith("ok")) {
+                    errors++;
+                }
+                position.setStartPosition();
+                next();
+                return;
+            }
+
+            latencies[recorded++] = System.nanoTime() - sentAt;
+            played++;
+
+            if (startsWith("ok ")) {
+                position.makeMove(pending);
+                pending = Move.NONE;
+                if (!startsWith("ok ongoing") || position.ply() >= MAX_GAME_PLY) {
+                    send("new");
+                    return;
+                }
+            } else {
+                errors++;
+                pending = Move.NONE;
+                send("new");
+                return;
+            }
+            next();
+        }
+
+        private void next() {
+            if (played == movesPerClient) {
+                done = true;
+                return;
+            }
+
+            int count = MoveGenerator.generateMoves(position, moves);
+            pending = moves[random.nextInt(count)];
+            send("move " + Move.toString(pending));
+            sentAt = System.nanoTime();
+        }
+
+        private boolean startsWith(String prefix) {
+            if (line.length() < prefix.length()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (line.charAt(i) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: simulate [--host h] [--port n] [--clients n] [--moves n] [--local]");
+        System.exit(2);
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String args[]) throws IOException {
+        String host = "localhost";
+        int port = GameServer.DEFAULT_PORT, clients = 1000, moves = 100;
+        boolean local = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--host")) {
+                    host = args[++i];
+                } else if (args[i].equals("--port")) {
+                    port = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--clients")) {
+                    clients = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--moves")) {
+                    moves = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--local")) {
+                    local = true;
+                } else {
+                    usage();
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            usage();
+        }
+
+        GameServer server = null;
+        if (local) {
+            server = new GameServer(0);
+            host = "localhost";
+            port = server.port();
+
+            Thread thread = new Thread(server, "kchess-server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        ClientSimulator simulator = new ClientSimulator(new InetSocketAddress(host, port), clients, moves);
+        long elapsed = simulator.run();
+
+        if (server != null) {
+            server.stop();
+        }
+
+        long millis = Math.max(1, elapsed / 1000000);
+        System.out.println(clients + " clients played " + simulator.moves() + " moves in " + millis + " ms ("
+                + simulator.moves() * 1000L / millis + " moves/s), " + simulator.errors() + " errors");
+        System.out.println("latency p50 " + simulator.percentile(0.50) / 1000 + " us, p99 "
+                + simulator.percentile(0.99) / 1000 + " us, max " + simulator.percentile(1.0) / 1000 + " us");
+    }
+}
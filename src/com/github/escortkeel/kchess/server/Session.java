@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.server;
+
+import com.github.escortkeel.kchess.board.Fen;
+import com.github.escortkeel.kchess.board.GameResult;
+import com.github.escortkeel.kchess.board.Move;
+import com.github.escortkeel.kchess.board.MoveGenerator;
+import com.github.escortkeel.kchess.board.Position;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * One game hosted by a {@link GameServer}. Clients send ASCII commands, one
+ * per line, and receive exactly one line in reply:
+ *
+ * <pre>
+ * new [fen]     start a game from the given position, or the initial one
+ *               -&gt; ok | error &lt;reason&gt;
+ * move &lt;move&gt;   play a move in coordinate notation, e.g. e2e4 or e7e8q
+ *               -&gt; ok &lt;result&gt; | illegal | error &lt;reason&gt;
+ * undo          take back the last move -&gt; ok | error &lt;reason&gt;
+ * moves         -&gt; moves &lt;move&gt;...
+ * fen           -&gt; fen &lt;fen&gt;
+ * result        -&gt; &lt;result&gt;
+ * quit          -&gt; bye, then the server closes the connection
+ * </pre>
+ *
+ * where {@code <result>} is one of {@code ongoing}, {@code checkmate},
+ * {@code stalemate}, {@code insufficient-material},
+ * {@code threefold-repetition} or {@code fifty-move-rule}. Playing a move
+ * allocates nothing.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+final class Session {
+
+    static final int MAX_LINE = 256;
+    private static final int OUTPUT_CAPACITY = 16 * 1024;
+    private static final String[] RESULTS = new String[GameResult.values().length];
+    private static final String[] PLAYED = new String[GameResult.values().length];
+    private final Position position = new Position();
+    private final ByteBuffer input = ByteBuffer.allocate(4096);
+    private final ByteBuffer output = ByteBuffer.allocate(OUTPUT_CAPACITY);
+    private final StringBuilder line = new StringBuilder(MAX_LINE);
+    private boolean closing;
+
+    static {
+        for (GameResult result : GameResult.values()) {
+            RESULTS[result.ordinal()] = result.name().toLowerCase().replace('_', '-');
+            PLAYED[result.ordinal()] = "ok " + RESULTS[result.ordinal()];
+        }
+    }
+
+    Session() {
+        position.setStartPosition();
+    }
+
+    /**
+     * Reads what is available from {@code channel} and executes every
+     * complete command.
+     *
+     * @return false if the client has closed the connection
+     */
+    boolean read(SocketChannel channel) throws IOException {
+        int n = channel.read(input);
+        if (n == -1) {
+            return false;
+        }
+
+        input.flip();
+        while (input.hasRemaining() && !closing) {
+            byte b = input.get();
+            if (b == '\n') {
+                execute();
+                line.setLength(0);
+            } else if (b != '\r') {
+                if (line.length() == MAX_LINE) {
+                    reply("error line too long");
+                    closing = true;
+                } else {
+                    line.append((char) (b & 0xFF));
+                }
+            }
+        }
+        input.clear();
+        return true;
+    }
+
+    void write(SocketChannel channel) throws IOException {
+        output.flip();
+        channel.write(output);
+        output.compact();
+    }
+
+    boolean hasOutput() {
+        return output.position() > 0;
+    }
+
+    /**
+     * @return whether the session should be closed once its output is sent
+     */
+    boolean isClosing() {
+        return closing;
+    }
+
+    private void execute() {
+        if (command("move")) {
+            play();
+        } else if (command("new")) {
+            if (line.length() == 0) {
+                position.setStartPosition();
+                reply("ok");
+            } else {
+                try {
+                    Fen.load(position, line);
+                    reply("ok");
+                } catch (IllegalArgumentException e) {
+                    position.setStartPosition();
+                    reply("error " + e.getMessage());
+                }
+            }
+        } else if (command("undo")) {
+            if (position.ply() == 0) {
+                reply("error nothing to undo");
+            } else {
+                position.unmakeMove();
+                reply("ok");
+            }
+        } else if (command("moves")) {
+            int[] moves = new int[MoveGenerator.MAX_MOVES];
+            int count = MoveGenerator.generateMoves(position, moves);
+
+            StringBuilder reply = new StringBuilder("moves");
+            for (int i = 0; i < count; i++) {
+                reply.append(' ').append(Move.toString(moves[i]));
+            }
+            reply(reply);
+        } else if (command("fen")) {
+            reply("fen " + Fen.toString(position));
+        } else if (command("result")) {
+            reply(RESULTS[position.gameResult().ordinal()]);
+        } else if (command("quit")) {
+            reply("bye");
+            closing = true;
+        } else if (line.length() > 0) {
+            reply("error unknown command");
+        }
+    }
+
+    private void play() {
+        if (position.ply() == Position.MAX_PLY) {
+            reply("error game too long");
+            return;
+        }
+
+        int move = Move.parse(position, line);
+        if (move == Move.NONE) {
+            reply("illegal");
+            return;
+        }
+
+        position.makeMove(move);
+        reply(PLAYED[position.gameResult().ordinal()]);
+    }
+
+    /**
+     * Tests whether the line holds {@code name}, alone or followed by a space
+     * and an argument. If so, the line is left holding just the argument.
+     */
+    private boolean command(String name) {
+        int length = name.length();
+        if (line.length() < length || (line.length() > length && line.charAt(length) != ' ')) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line.charAt(i) != name.charAt(i)) {
+                return false;
+            }
+        }
+
+        int start = length;
+        while (start < line.length() && line.charAt(start) == ' ') {
+            start++;
+        }
+        line.delete(0, start);
+        return true;
+    }
+
+    /**
+     * Queues a line for the client. A client which lets its replies back up
+     * beyond the output buffer is disconnected.
+     */
+    private void reply(CharSequence s) {
+        if (output.remaining() < s.length() + 1) {
+            output.clear();
+            closing = true;
+            return;
+        }
+
+        for (int i = 0; i < s.length(); i++) {
+            output.put((byte) s.charAt(i));
+        }
+        output.put((byte) '\n');
+    }
+}
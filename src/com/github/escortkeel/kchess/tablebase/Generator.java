@@ -0,0 +1,492 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.tablebase;
+
+import com.github.escortkeel.kchess.board.Attacks;
+import com.github.escortkeel.kchess.board.Move;
+import com.github.escortkeel.kchess.board.MoveGenerator;
+import com.github.escortkeel.kchess.board.Position;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates endgame tables by retrograde analysis. Every position is first
+ * set up once to find mates, stalemates and the best result of leaving the
+ * table by a capture or promotion, which is looked up in a smaller table
+ * generated beforehand. Then, one ply of distance at a time, positions from
+ * which a move reaches a position lost at the previous distance are won,
+ * found by un-making moves from those positions, and positions all of whose
+ * moves reach positions won at the previous distance are lost, found by
+ * marking the predecessors of those positions and checking their moves.
+ * <p>
+ * Each pass splits the table across a pool of threads. Passes only ever
+ * write the one value that belongs to the current distance, so threads may
+ * race to write the same entry without harm. Positions are generated
+ * without en passant rights, so a double pawn push that would allow an en
+ * passant reply is scored as if it did not.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class Generator {
+
+    private static final byte UNKNOWN = Byte.MIN_VALUE;
+    private static final byte ILLEGAL = Byte.MAX_VALUE;
+    private static final int MAX_PLIES = 125;
+    private static final int CHUNKS_PER_THREAD = 16;
+    private final Tablebases tablebases;
+    private final int threads;
+    private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+        @Override
+        protected Worker initialValue() {
+            return new Worker();
+        }
+    };
+
+    public Generator(Tablebases tablebases, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("A generator needs at least one thread");
+        }
+        this.tablebases = tablebases;
+        this.threads = threads;
+    }
+
+    /**
+     * Lists the tables that must be generated, in order, before the table
+     * named {@code name} can be probed, ending with that table. Tables that
+     * already exist are left out.
+     *
+     * @throws IllegalArgumentException if {@code name} is malformed
+     */
+    public List<String> plan(String name) {
+        Map<String, Material> order = new LinkedHashMap<>();
+        plan(Material.parse(name), order);
+        return new ArrayList<>(order.keySet());
+    }
+
+    private void plan(Material material, Map<String, Material> order) {
+        if (order.containsKey(material.name) || tablebases.file(material.name).isFile()) {
+            return;
+        }
+        for (Material successor : material.successors()) {
+            plan(successor, order);
+        }
+        order.put(material.name, material);
+    }
+
+    /**
+     * Generates the table named {@code name} and writes it to the tablebase
+     * directory. Every table in its {@link #plan} must already exist.
+     *
+     * @return a summary of the table's contents
+     */
+    public String generate(String name) throws IOException, InterruptedException {
+        final Material material = Material.parse(name);
+        final byte[] values = new byte[material.size];
+        final byte[] conversions = new byte[material.size];
+        final byte[] marks = new byte[material.size];
+        long start = System.currentTimeMillis();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            int longestConversion = parallel(pool, material.size, new Pass() {
+                @Override
+                public int run(int from, int to, Worker worker) {
+                    int longest = 0;
+                    for (int index = from; index < to; index++) {
+                        values[index] = initialise(material, index, worker, conversions);
+                        if (values[index] == UNKNOWN && conversions[index] != UNKNOWN && conversions[index] != 0) {
+                            longest = Math.max(longest, Tablebases.plies(conversions[index]));
+                        }
+                    }
+                    return longest;
+                }
+            }, true);
+
+            int quiet = 0, plies = 1;
+            for (; quiet < 2 || plies <= longestConversion; plies++) {
+                if (plies > MAX_PLIES) {
+                    throw new IllegalStateException("Mates in " + material + " are too long to store");
+                }
+
+                final int layer = plies;
+                int changed;
+                if (layer % 2 == 1) {
+                    changed = parallel(pool, material.size, new Pass() {
+                        @Override
+                        public int run(int from, int to, Worker worker) {
+                            byte lost = loss(layer - 1), won = win(layer);
+                            int changed = 0;
+                            for (int index = from; index < to; index++) {
+                                if (values[index] == lost) {
+                                    changed += retract(material, index, worker, values, marks, won, (byte) 0);
+                                } else if (values[index] == UNKNOWN && conversions[index] == won) {
+                                    values[index] = won;
+                                    changed++;
+                                }
+                            }
+                            return changed;
+                        }
+                    }, false);
+                } else {
+                    parallel(pool, material.size, new Pass() {
+                        @Override
+                        public int run(int from, int to, Worker worker) {
+                            byte won = win(layer - 1), lost = loss(layer);
+                            for (int index = from; index < to; index++) {
+                                if (values[index] == won) {
+                                    retract(material, index, worker, values, marks, UNKNOWN, (byte) layer);
+                                } else if (values[index] == UNKNOWN && conversions[index] == lost) {
+                                    marks[index] = (byte) layer;
+                                }
+                            }
+                            return 0;
+                        }
+                    }, false);
+                    changed = parallel(pool, material.size, new Pass() {
+                        @Override
+                        public int run(int from, int to, Worker worker) {
+                            int changed = 0;
+                            for (int index = from; index < to; index++) {
+                                if (marks[index] == layer && values[index] == UNKNOWN
+                                        && lostAfter(material, index, worker, values, conversions) == layer) {
+                                    values[index] = loss(layer);
+                                    changed++;
+                                }
+                            }
+                            return changed;
+                        }
+                    }, false);
+                }
+                quiet = changed == 0 ? quiet + 1 : 0;
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long won = 0, drawn = 0, lost = 0, unused = 0;
+        int longest = 0;
+        for (int index = 0; index < values.length; index++) {
+            byte value = values[index];
+            if (value == ILLEGAL || value == UNKNOWN) {
+                if (value == ILLEGAL) {
+                    unused++;
+                } else {
+                    drawn++;
+                }
+                values[index] = 0;
+            } else if (value == 0) {
+                drawn++;
+            } else {
+                if (value > 0) {
+                    won++;
+                } else {
+                    lost++;
+                }
+                longest = Math.max(longest, Tablebases.plies(value));
+            }
+        }
+
+        write(material, values);
+        tablebases.refresh();
+
+        return material + ": " + (won + drawn + lost) + " positions, " + won + " won, " + drawn + " drawn, "
+                + lost + " lost, " + unused + " unused, longest mate " + longest + " plies, in "
+                + (System.currentTimeMillis() - start) + " ms";
+    }
+
+    /**
+     * Scores the position at {@code index} as far as it can be without
+     * other positions in the table: illegal, mated, stalemated or, if every
+     * move leaves the table, the best of those moves. Otherwise records the
+     * best move leaving the table in {@code conversions}.
+     */
+    private byte initialise(Material material, int index, Worker worker, byte[] conversions) {
+        Position position = worker.position;
+        conversions[index] = UNKNOWN;
+        if (!material.decode(index, position)) {
+            return ILLEGAL;
+        }
+
+        int count = MoveGenerator.generateMoves(position, worker.moves);
+        if (count == 0) {
+            return position.inCheck() ? loss(0) : 0;
+        }
+
+        int inside = 0;
+        byte best = UNKNOWN;
+        for (int i = 0; i < count; i++) {
+            int move = worker.moves[i];
+            if (!Move.isCapture(move) && !Move.isPromotion(move)) {
+                inside++;
+                continue;
+            }
+
+            position.makeMove(move);
+            int value = tablebases.probe(position);
+            position.unmakeMove();
+            if (value == Tablebases.UNKNOWN) {
+                throw new IllegalStateException("A table needed for " + material + " is missing");
+            }
+            best = better(best, before((byte) value));
+        }
+
+        if (inside == 0) {
+            return best;
+        }
+        conversions[index] = best;
+        return UNKNOWN;
+    }
+
+    /**
+     * Un-makes every move that could have led to the position at
+     * {@code index} without leaving the table. Predecessors not yet scored
+     * are set to {@code value}, unless it is {@link #UNKNOWN}, and marked
+     * with {@code mark}, unless it is zero.
+     *
+     * @return the number of predecessors changed
+     */
+    private static int retract(Material material, int index, Worker worker, byte[] values, byte[] marks, byte value, byte mark) {
+        Position position = worker.position;
+        material.decode(index, position);
+
+        int mover = position.sideToMove() ^ 1, changed = 0;
+        long occupied = position.occupied(), pieces = position.colour(mover);
+        while (pieces != 0) {
+            int sq = Long.numberOfTrailingZeros(pieces);
+            int piece = position.pieceAt(sq);
+            long origins;
+            switch (Position.typeOf(piece)) {
+                case Position.PAWN:
+                    origins = pawnOrigins(sq, mover, occupied);
+                    break;
+                case Position.KNIGHT:
+                    origins = Attacks.knight(sq);
+                    break;
+                case Position.BISHOP:
+                    origins = Attacks.bishop(sq, occupied);
+                    break;
+                case Position.ROOK:
+                    origins = Attacks.rook(sq, occupied);
+                    break;
+                case Position.QUEEN:
+                    origins = Attacks.queen(sq, occupied);
+                    break;
+                default:
+                    origins = Attacks.king(sq);
+                    break;
+            }
+            origins &= ~occupied;
+
+            while (origins != 0) {
+                int origin = Long.numberOfTrailingZeros(origins);
+                position.remove(sq);
+                position.put(piece, origin);
+                position.setSideToMove(mover);
+
+                if (!position.isAttacked(position.kingSquare(mover ^ 1), mover)) {
+                    int before = material.index(position, false);
+                    if (values[before] == UNKNOWN) {
+                        if (value != UNKNOWN) {
+                            values[before] = value;
+                        }
+                        if (mark != 0) {
+                            marks[before] = mark;
+                        }
+                        changed++;
+                    }
+                }
+
+                position.remove(origin);
+                position.put(piece, sq);
+                position.setSideToMove(mover ^ 1);
+                origins &= origins - 1;
+            }
+            pieces &= pieces - 1;
+        }
+        return changed;
+    }
+
+    private static long pawnOrigins(int sq, int colour, long occupied) {
+        int back = colour == Position.WHITE ? -8 : 8;
+        int rank = Position.rankOf(colour == Position.WHITE ? sq : sq ^ 56);
+        if (rank < 2 || (occupied & (1L << (sq + back))) != 0) {
+            return 0;
+        }
+
+        long origins = 1L << (sq + back);
+        if (rank == 3 && (occupied & (1L << (sq + 2 * back))) == 0) {
+            origins |= 1L << (sq + 2 * back);
+        }
+        return origins;
+    }
+
+    /**
+     * @return the distance in plies at which the position at {@code index}
+     * is lost if every move from it is known to lose, or -1 if some move is
+     * not
+     */
+    private static int lostAfter(Material material, int index, Worker worker, byte[] values, byte[] conversions) {
+        Position position = worker.position;
+        material.decode(index, position);
+
+        byte conversion = conversions[index];
+        if (conversion != UNKNOWN && conversion >= 0) {
+            return -1;
+        }
+        int longest = conversion == UNKNOWN ? 0 : Tablebases.plies(conversion);
+
+        int count = MoveGenerator.generateMoves(position, worker.moves);
+        for (int i = 0; i < count; i++) {
+            int move = worker.moves[i];
+            if (Move.isCapture(move) || Move.isPromotion(move)) {
+                continue;
+            }
+
+            position.makeMove(move);
+            byte value = values[material.index(position, false)];
+            position.unmakeMove();
+            if (value == UNKNOWN || value == ILLEGAL || value <= 0) {
+                return -1;
+            }
+            longest = Math.max(longest, value + 1);
+        }
+        return longest;
+    }
+
+    private static byte win(int plies) {
+        return (byte) plies;
+    }
+
+    private static byte loss(int plies) {
+        return (byte) -(plies + 1);
+    }
+
+    /**
+     * @return the value of a position one ply before a position worth
+     * {@code value} to the other side
+     */
+    private static byte before(byte value) {
+        if (value == 0) {
+            return 0;
+        }
+        int plies = Tablebases.plies(value) + 1;
+        if (plies > MAX_PLIES) {
+            throw new IllegalStateException("Mate too long to store");
+        }
+        return value > 0 ? loss(plies) : win(plies);
+    }
+
+    /**
+     * @return the value better for the side to move, where a quicker win is
+     * better than a slower one and a slower loss better than a quicker one
+     */
+    private static byte better(byte a, byte b) {
+        if (a == UNKNOWN) {
+            return b;
+        }
+        if (b == UNKNOWN) {
+            return a;
+        }
+        return rank(a) >= rank(b) ? a : b;
+    }
+
+    private static int rank(byte value) {
+        return value > 0 ? 1000 - value : value == 0 ? 0 : -1000 - value;
+    }
+
+    private void write(Material material, byte[] values) throws IOException {
+        File file = tablebases.file(material.name);
+        File partial = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = new RandomAccessFile(partial, "rw").getChannel()) {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(Tablebases.HEADER_SIZE);
+            header.putInt(Tablebases.MAGIC).putShort((short) Tablebases.VERSION).putShort((short) 0).putLong(values.length);
+            header.flip();
+            ByteBuffer body = ByteBuffer.wrap(values);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (body.hasRemaining()) {
+                channel.write(body);
+            }
+        }
+        if (file.exists() && !file.delete() || !partial.renameTo(file)) {
+            throw new IOException("Could not write " + file);
+        }
+    }
+
+    /**
+     * Runs {@code pass} over every index in chunks spread across the pool.
+     *
+     * @return the sum, or if {@code max} is set the largest, of the chunks'
+     * results
+     */
+    private int parallel(ExecutorService pool, int size, final Pass pass, boolean max)
+            throws InterruptedException, ExecutionException {
+        int chunks = threads * CHUNKS_PER_THREAD, chunk = (size + chunks - 1) / chunks;
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int from = 0; from < size; from += chunk) {
+            final int start = from, end = Math.min(size, from + chunk);
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return pass.run(start, end, workers.get());
+                }
+            });
+        }
+
+        int result = 0;
+        for (Future<Integer> future : pool.invokeAll(tasks)) {
+            result = max ? Math.max(result, future.get()) : result + future.get();
+        }
+        return result;
+    }
+
+    private interface Pass {
+
+        int run(int from, int to, Worker worker);
+    }
+
+    private static final class Worker {
+
+        final Position position = new Position();
+        final int[] moves = new int[MoveGenerator.MAX_MOVES];
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.tablebase;
+
+import com.github.escortkeel.kchess.board.Position;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The pieces of one endgame table and the mapping between its positions and
+ * table indexes. A table is named for its pieces, white's first, as in
+ * {@code KQKR}; of the two colourings of the same material only the one
+ * with the stronger side as white is stored, and positions with the colours
+ * reversed are probed flipped.
+ * <p>
+ * An index is, from most to least significant, the side to move, the white
+ * king square, the black king square and one square per other piece, white's
+ * then black's in the order of the name. The board is first mirrored so the
+ * white king lies on files a to d, and if there are no pawns also so that
+ * it lies in the triangle a1-d1-d4, which cuts the table to a half or a
+ * tenth of its naive size. With the white king on the long diagonal the
+ * board is also reflected in it if that gives a smaller index, and like
+ * pieces are listed in square order after mirroring, so that every
+ * position has exactly one index. Squares that clash, pawns on the first or
+ * last rank and positions where the side not to move is in check are
+ * illegal and never probed, as are the indexes of mirror images.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+final class Material {
+
+    private static final String LETTERS = "PNBRQ";
+    private static final int[] TRIANGLE = new int[64];
+
+    static {
+        int next = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            int file = Position.fileOf(sq), rank = Position.rankOf(sq);
+            TRIANGLE[sq] = file <= 3 && rank <= file ? next++ : -1;
+        }
+    }
+
+    final String name;
+    final boolean pawns;
+    final int size;
+    private final int[] colours;
+    private final int[] types;
+    private final int kingSquares;
+
+    private Material(int[] white, int[] black) {
+        StringBuilder sb = new StringBuilder("K");
+        int count = white.length + black.length;
+        colours = new int[count];
+        types = new int[count];
+
+        boolean hasPawns = false;
+        for (int i = 0; i < count; i++) {
+            colours[i] = i < white.length ? Position.WHITE : Position.BLACK;
+            types[i] = i < white.length ? white[i] : black[i - white.length];
+            hasPawns |= types[i] == Position.PAWN;
+            if (i == white.length) {
+                sb.append('K');
+            }
+            sb.append(LETTERS.charAt(types[i]));
+        }
+        if (black.length == 0) {
+            sb.append('K');
+        }
+
+        name = sb.toString();
+        pawns = hasPawns;
+        kingSquares = pawns ? 32 : 10;
+        size = 2 * kingSquares * 64 << (6 * count);
+    }
+
+    /**
+     * Parses a table name such as {@code KBNK}, putting the stronger side
+     * first if it is not already.
+     *
+     * @throws IllegalArgumentException if the name is malformed or has more
+     * than {@link Tablebases#MAX_PIECES} pieces
+     */
+    static Material parse(String name) {
+        int split = name.indexOf('K', 1);
+        if (!name.startsWith("K") || split == -1 || name.length() > Tablebases.MAX_PIECES) {
+            throw new IllegalArgumentException("Bad table name: " + name);
+        }
+
+        int[] white = letters(name.substring(1, split), name), black = letters(name.substring(split + 1), name);
+        return stronger(black, white) ? new Material(black, white) : new Material(white, black);
+    }
+
+    /**
+     * @return a key identifying the material of {@code position} as it
+     * stands, colours not reversed
+     */
+    static long key(Position position) {
+        long key = 0;
+        for (int colour = Position.WHITE; colour <= Position.BLACK; colour++) {
+            for (int type = Position.PAWN; type < Position.KING; type++) {
+                key = key << 4 | Long.bitCount(position.pieces(colour, type));
+            }
+        }
+        return key;
+    }
+
+    /**
+     * @return the {@link #key} of positions holding this material, colours
+     * reversed if {@code flip} is set
+     */
+    long key(boolean flip) {
+        long key = 0;
+        for (int colour = Position.WHITE; colour <= Position.BLACK; colour++) {
+            for (int type = Position.PAWN; type < Position.KING; type++) {
+                int count = 0;
+                for (int i = 0; i < types.length; i++) {
+                    if (types[i] == type && (colours[i] == colour) != flip) {
+                        count++;
+                    }
+                }
+                key = key << 4 | count;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * @return the tables reached by a capture or promotion from this one,
+     * leaving out bare kings
+     */
+    List<Material> successors() {
+        List<Material> successors = new ArrayList<>();
+        for (int i = 0; i < types.length; i++) {
+            if (types.length > 1) {
+                successors.add(without(i, -1));
+            }
+            if (types[i] == Position.PAWN) {
+                for (int promotion = Position.KNIGHT; promotion <= Position.QUEEN; promotion++) {
+                    successors.add(without(i, promotion));
+                }
+            }
+        }
+        return successors;
+    }
+
+    private Material without(int removed, int replacement) {
+        List<Integer> white = new ArrayList<>(), black = new ArrayList<>();
+        for (int i = 0; i < types.length; i++) {
+            int type = i == removed ? replacement : types[i];
+            if (type != -1) {
+                (colours[i] == Position.WHITE ? white : black).add(type);
+            }
+        }
+        int[] w = sorted(white), b = sorted(black);
+        return stronger(b, w) ? new Material(b, w) : new Material(w, b);
+    }
+
+    /**
+     * Computes the index of {@code position}, which must hold this
+     * material, colours reversed if {@code flip} is set.
+     */
+    int index(Position position, boolean flip) {
+        int us = flip ? Position.BLACK : Position.WHITE;
+        int flipRanks = flip ? 56 : 0;
+        int wk = position.kingSquare(us) ^ flipRanks;
+
+        int transform = 0;
+        if (Position.fileOf(wk) > 3) {
+            transform |= 1;
+        }
+        if (!pawns) {
+            if (Position.rankOf(wk) > 3) {
+                transform |= 2;
+            }
+            int t = apply(transform, wk);
+            if (Position.rankOf(t) > Position.fileOf(t)) {
+                transform |= 4;
+            } else if (Position.rankOf(t) == Position.fileOf(t)) {
+                return Math.min(index(position, us, flipRanks, transform),
+                        index(position, us, flipRanks, transform | 4));
+            }
+        }
+        return index(position, us, flipRanks, transform);
+    }
+
+    private int index(Position position, int us, int flipRanks, int transform) {
+        int wk = apply(transform, position.kingSquare(us) ^ flipRanks);
+        int index = position.sideToMove() == us ? 0 : 1;
+        index = index * kingSquares + (pawns ? Position.rankOf(wk) * 4 + Position.fileOf(wk) : TRIANGLE[wk]);
+        index = index * 64 + apply(transform, position.kingSquare(us ^ 1) ^ flipRanks);
+
+        for (int i = 0; i < types.length; i++) {
+            long pieces = position.pieces(colours[i] == Position.WHITE ? us : us ^ 1, types[i]), bb = 0;
+            for (; pieces != 0; pieces &= pieces - 1) {
+                bb |= 1L << apply(transform, Long.numberOfTrailingZeros(pieces) ^ flipRanks);
+            }
+            for (int j = i - 1; j >= 0 && colours[j] == colours[i] && types[j] == types[i]; j--) {
+                bb &= bb - 1;
+            }
+            index = index * 64 + Long.numberOfTrailingZeros(bb);
+        }
+        return index;
+    }
+
+    /**
+     * Sets {@code position} up as the position at {@code index}.
+     *
+     * @return whether the position is legal and {@code index} is the one
+     * {@link #index} gives it, rather than that of a symmetric twin; if not,
+     * {@code position} is left in an unspecified state
+     */
+    boolean decode(int index, Position position) {
+        position.clear();
+
+        int rest = index >>> (6 * types.length);
+        int bk = rest & 63;
+        rest >>>= 6;
+        int king = rest % kingSquares, stm = rest / kingSquares;
+        int wk = pawns ? Position.square(king & 3, king >> 2) : triangleSquare(king);
+
+        if (wk == bk) {
+            return false;
+        }
+        position.put(Position.piece(Position.WHITE, Position.KING), wk);
+        position.put(Position.piece(Position.BLACK, Position.KING), bk);
+        for (int i = 0; i < types.length; i++) {
+            int sq = (index >>> (6 * (types.length - 1 - i))) & 63;
+            if (position.pieceAt(sq) != Position.EMPTY
+                    || (types[i] == Position.PAWN && (Position.rankOf(sq) == 0 || Position.rankOf(sq) == 7))) {
+                return false;
+            }
+            position.put(Position.piece(colours[i], types[i]), sq);
+        }
+
+        position.setSideToMove(stm == 0 ? Position.WHITE : Position.BLACK);
+        return !position.isAttacked(position.kingSquare(stm ^ 1), stm) && index(position, false) == index;
+    }
+
+    private static int triangleSquare(int index) {
+        for (int sq = 0; ; sq++) {
+            if (TRIANGLE[sq] == index) {
+                return sq;
+            }
+        }
+    }
+
+    private static int apply(int transform, int sq) {
+        if ((transform & 1) != 0) {
+            sq ^= 7;
+        }
+        if ((transform & 2) != 0) {
+            sq ^= 56;
+        }
+        if ((transform & 4) != 0) {
+            sq = (sq & 7) << 3 | sq >>> 3;
+        }
+        return sq;
+    }
+
+    private static int[] letters(String s, String name) {
+        List<Integer> types = new ArrayList<>();
+        for (char ch : s.toCharArray()) {
+            int type = LETTERS.indexOf(ch);
+            if (type == -1) {
+                throw new IllegalArgumentException("Bad table name: " + name);
+            }
+            types.add(type);
+        }
+        return sorted(types);
+    }
+
+    private static int[] sorted(List<Integer> types) {
+        int[] sorted = new int[types.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = types.get(i);
+        }
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length / 2; i++) {
+            int t = sorted[i];
+            sorted[i] = sorted[sorted.length - 1 - i];
+            sorted[sorted.length - 1 - i] = t;
+        }
+        return sorted;
+    }
+
+    /**
+     * @return whether {@code a} is the stronger of two sides: it has more
+     * pieces, or as many and the first that differs is worth more
+     */
+    private static boolean stronger(int[] a, int[] b) {
+        if (a.length != b.length) {
+            return a.length > b.length;
+        }
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                return a[i] > b[i];
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
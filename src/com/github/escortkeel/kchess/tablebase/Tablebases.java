@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.kchess.tablebase;
+
+import com.github.escortkeel.kchess.board.Attacks;
+import com.github.escortkeel.kchess.board.Position;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Probes the endgame tables in a directory, as written by {@link Generator}.
+ * Every table is memory-mapped and checked when the directory is opened, so
+ * a bad file is reported then rather than in the middle of a search, and
+ * tables may be probed from any number of threads without allocating.
+ * <p>
+ * A table file is a {@link #HEADER_SIZE}-byte header, "KCTB", a u16
+ * version, two reserved bytes and a u64 entry count, followed by one signed
+ * byte per index: zero if the position is drawn, {@code p} if the side to
+ * move mates in {@code p} plies and {@code -(p + 1)} if it is mated in
+ * {@code p} plies, so that a side checkmated on the board reads -1. Tables
+ * know nothing of castling, en passant or the fifty-move rule.
+ *
+ * @author Keeley Hoek (escortkeel@gmail.com)
+ */
+public final class Tablebases {
+
+    /**
+     * The most pieces, kings included, of any table.
+     */
+    public static final int MAX_PIECES = 4;
+    /**
+     * Returned by {@link #probe} for positions not in any table.
+     */
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+    public static final String EXTENSION = ".ktb";
+    static final int MAGIC = 0x4B435442;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    private final File directory;
+    /**
+     * Open-addressed by material key, with each table entered once for
+     * each colouring of its material.
+     */
+    private volatile Table[] tables;
+
+    /**
+     * Opens every table in {@code directory}.
+     *
+     * @throws IOException if the directory or any table in it cannot be read
+     */
+    public Tablebases(File directory) throws IOException {
+        this.directory = directory;
+        refresh();
+    }
+
+    /**
+     * @return the file holding the table named {@code name}
+     */
+    File file(String name) {
+        return new File(directory, name + EXTENSION);
+    }
+
+    /**
+     * Looks {@code position} up. Bare kings are always drawn; positions with
+     * castling rights or an en passant capture available are never found.
+     *
+     * @return the stored value, see the class description, or
+     * {@link #UNKNOWN} if there is no table for the position
+     */
+    public int probe(Position position) {
+        long occupied = position.occupied();
+        if (Long.bitCount(occupied) > MAX_PIECES || position.castlingRights() != 0
+                || position.kingSquare(Position.WHITE) == 64 || position.kingSquare(Position.BLACK) == 64) {
+            return UNKNOWN;
+        }
+        int ep = position.enPassantSquare(), us = position.sideToMove();
+        if (ep != -1 && (Attacks.pawn(us ^ 1, ep) & position.pieces(us, Position.PAWN)) != 0) {
+            return UNKNOWN;
+        }
+        if (Long.bitCount(occupied) == 2) {
+            return 0;
+        }
+
+        long key = Material.key(position);
+        Table[] tables = this.tables;
+        int mask = tables.length - 1;
+        for (int i = slot(key, mask); tables[i] != null; i = (i + 1) & mask) {
+            Table table = tables[i];
+            if (table.key == key) {
+                return table.data.get(HEADER_SIZE + table.material.index(position, table.flip));
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * @return whether a value from {@link #probe} is a win for the side to
+     * move
+     */
+    public static boolean isWin(int value) {
+        return value != UNKNOWN && value > 0;
+    }
+
+    /**
+     * @return whether a value from {@link #probe} is a loss for the side to
+     * move
+     */
+    public static boolean isLoss(int value) {
+        return value != UNKNOWN && value < 0;
+    }
+
+    /**
+     * @return the distance to mate in plies of a won or lost value
+     */
+    public static int plies(int value) {
+        return value > 0 ? value : -value - 1;
+    }
+
+    /**
+     * Opens the tables in the directory afresh, so that tables written since
+     * are found.
+     *
+     * @throws IOException if the directory or any table in it cannot be read
+     */
+    void refresh() throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Could not list endgame tables in " + directory);
+        }
+
+        List<Table> opened = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isFile() && name.endsWith(EXTENSION)) {
+                open(file, name.substring(0, name.length() - EXTENSION.length()), opened);
+            }
+        }
+
+        Table[] tables = new Table[Math.max(16, Integer.highestOneBit(opened.size()) * 4)];
+        int mask = tables.length - 1;
+        for (Table table : opened) {
+            int i = slot(table.key, mask);
+            while (tables[i] != null) {
+                i = (i + 1) & mask;
+            }
+            tables[i] = table;
+        }
+        this.tables = tables;
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    /**
+     * Maps and checks the table in {@code file}, adding an entry to
+     * {@code opened} for each colouring of its material.
+     */
+    private static void open(File file, String name, List<Table> opened) throws IOException {
+        Material material;
+        try {
+            material = Material.parse(name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Bad endgame table name " + file, e);
+        }
+        if (!material.name.equals(name)) {
+            throw new IOException("Bad endgame table name " + file + ", expected " + material.name);
+        }
+
+        ByteBuffer data;
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (channel.size() != HEADER_SIZE + (long) material.size || data.getInt(0) != MAGIC
+                    || data.getShort(4) != VERSION || data.getLong(8) != material.size) {
+                throw new IOException("Corrupt endgame table " + file);
+            }
+        }
+
+        long key = material.key(false), flippedKey = material.key(true);
+        opened.add(new Table(key, material, false, data));
+        if (flippedKey != key) {
+            opened.add(new Table(flippedKey, material, true, data));
+        }
+    }
+
+    private static final class Table {
+
+        final long key;
+        final Material material;
+        final boolean flip;
+        final ByteBuffer data;
+
+        Table(long key, Material material, boolean flip, ByteBuffer data) {
+            this.key = key;
+            this.material = material;
+            this.flip = flip;
+            this.data = data;
+        }
+    }
+}